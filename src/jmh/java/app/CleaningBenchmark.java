@@ -0,0 +1,91 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-record cost of text cleaning: the regex URL removal alone, the original regex-based chain, the
+ * single-pass {@link TextCleaner} that replaced it, and a whole record through
+ * {@link c_preprocessing1#preprocessData} with the fast lemmatizer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CleaningBenchmark {
+
+    @Param({"300"})
+    public int textLength;
+
+    private List<String[]> records;
+    private List<String[]> labeledRecords;
+    private c_preprocessing1 preprocessor;
+    private c_preprocessing1 fastPreprocessor;
+    private TextCleaner cleaner;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        records = SyntheticCorpus.newsRecords(1000, textLength, 3);
+        Path directory = Files.createTempDirectory("cleaning-bench");
+        Path stopWords = SyntheticCorpus.writeStopWords(directory);
+        c_preprocessing1.loadStopWordsFromFile(stopWords.toString());
+        Files.delete(stopWords);
+        Files.delete(directory);
+        preprocessor = new c_preprocessing1(1, c_preprocessing1.DEFAULT_CHUNK_SIZE);
+        fastPreprocessor = new c_preprocessing1(1, c_preprocessing1.DEFAULT_CHUNK_SIZE, c_preprocessing1.LemmaMode.FAST);
+        labeledRecords = new ArrayList<>(records.size());
+        for (String[] record : records) {
+            String[] labeled = Arrays.copyOf(record, record.length + 1);
+            labeled[record.length] = "fake";
+            labeledRecords.add(labeled);
+        }
+        cleaner = new TextCleaner(new HashSet<>(SyntheticCorpus.STOP_WORDS));
+    }
+
+    private String nextText() {
+        next = next + 1 == records.size() ? 0 : next + 1;
+        return records.get(next)[1];
+    }
+
+    @Benchmark
+    public String removeUrlsRegex() {
+        return preprocessor.removeUrls(nextText());
+    }
+
+    @Benchmark
+    public String cleanRegexChain() {
+        return preprocessor.referenceClean(nextText());
+    }
+
+    @Benchmark
+    public String cleanSinglePass() {
+        return cleaner.clean(nextText());
+    }
+
+    @Benchmark
+    public List<String[]> preprocessRecordFast() {
+        next = next + 1 == labeledRecords.size() ? 0 : next + 1;
+        return fastPreprocessor.preprocessData(labeledRecords.subList(next, next + 1));
+    }
+}
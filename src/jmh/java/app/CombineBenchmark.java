@@ -0,0 +1,71 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to merge two labeled synthetic feeds of {@code records} rows each with
+ * {@link b_combineCSV#mergeStreaming}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CombineBenchmark {
+
+    @Param({"5000"})
+    public int records;
+
+    @Param({"300"})
+    public int textLength;
+
+    private Path directory;
+    private List<b_combineCSV.LabeledInput> inputs;
+    private String output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("combine-bench");
+        Path fake = directory.resolve("Fake.csv");
+        Path real = directory.resolve("True.csv");
+        SyntheticCorpus.writeCsv(fake, SyntheticCorpus.newsRecords(records, textLength, 1));
+        SyntheticCorpus.writeCsv(real, SyntheticCorpus.newsRecords(records, textLength, 2));
+        inputs = List.of(new b_combineCSV.LabeledInput("fake", fake.toString()),
+                new b_combineCSV.LabeledInput("true", real.toString()));
+        output = directory.resolve("CombinedNews.csv").toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public long mergeStreaming() throws Exception {
+        return b_combineCSV.mergeStreaming(inputs, output);
+    }
+}
@@ -0,0 +1,106 @@
+package app;
+
+import com.opencsv.CSVReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read a synthetic feed of {@code records} rows: opencsv's {@code CSVReader.readAll}, which
+ * the stages used before, {@link MappedCsvReader#readAll}, and a streaming pass over
+ * {@link MappedCsvReader} that reads every field through {@link MappedCsvReader.Row#field(int)}.
+ * {@code CSVWriter} quotes every field, so that pass only gets zero-copy slices if quoted fields are
+ * sliced inside their quotes. Every tenth record has fields with quotes, commas, line breaks and
+ * non-ASCII characters, which are decoded; the setup checks that both readers return the same
+ * records.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvReadBenchmark {
+
+    @Param({"10000"})
+    public int records;
+
+    @Param({"300"})
+    public int textLength;
+
+    private Path directory;
+    private Path csv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("csv-bench");
+        csv = directory.resolve("News.csv");
+        List<String[]> news = SyntheticCorpus.newsRecords(records, textLength, 5);
+        for (int i = 0; i < news.size(); i += 10) {
+            String[] record = news.get(i);
+            record[0] = "\"Breaking\", she said: " + record[0] + " – café";
+            record[1] = record[1] + "\nUpdate, " + i + ": \"more\" to follow";
+        }
+        SyntheticCorpus.writeCsv(csv, news);
+
+        List<String[]> expected = opencsvReadAll();
+        List<String[]> actual = mappedReadAll();
+        if (expected.size() != actual.size()) {
+            throw new IllegalStateException("Readers disagree on the number of records");
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!Arrays.equals(expected.get(i), actual.get(i))) {
+                throw new IllegalStateException("Readers disagree on record " + i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(csv);
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public List<String[]> opencsvReadAll() throws Exception {
+        try (CSVReader reader = new CSVReader(Files.newBufferedReader(csv))) {
+            return reader.readAll();
+        }
+    }
+
+    @Benchmark
+    public List<String[]> mappedReadAll() throws IOException {
+        return MappedCsvReader.readAll(csv.toString());
+    }
+
+    @Benchmark
+    public long mappedSlices() throws IOException {
+        long characters = 0;
+        try (MappedCsvReader reader = new MappedCsvReader(csv)) {
+            for (MappedCsvReader.Row row : reader) {
+                for (int i = 0; i < row.size(); i++) {
+                    CharSequence field = row.field(i);
+                    characters += field.length() > 0 ? field.charAt(field.length() - 1) : 0;
+                }
+            }
+        }
+        return characters;
+    }
+}
@@ -0,0 +1,71 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-token cost of lemmatization: the rule-based {@link FastLemmatizer} and a warm
+ * {@link LemmaCache} hit. The CoreNLP pipeline itself is left out because its models are not part of
+ * the offline build; {@link LemmaModeReport} measures it on real data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LemmatizationBenchmark {
+
+    private String[] tokens;
+    private FastLemmatizer lemmatizer;
+    private LemmaCache cache;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TextCleaner cleaner = new TextCleaner(new HashSet<>(SyntheticCorpus.STOP_WORDS));
+        List<String> cleanedTokens = new ArrayList<>();
+        for (String[] record : SyntheticCorpus.newsRecords(200, 300, 4)) {
+            for (String token : cleaner.clean(record[1]).split(" ")) {
+                if (!token.isEmpty()) {
+                    cleanedTokens.add(token);
+                }
+            }
+        }
+        tokens = cleanedTokens.toArray(new String[0]);
+        lemmatizer = new FastLemmatizer();
+        cache = new LemmaCache(100_000);
+        for (String token : tokens) {
+            cache.get(token, lemmatizer::lemmatize);
+        }
+    }
+
+    private String nextToken() {
+        next = next + 1 == tokens.length ? 0 : next + 1;
+        return tokens[next];
+    }
+
+    @Benchmark
+    public String fastLemmatizer() {
+        return lemmatizer.lemmatize(nextToken());
+    }
+
+    @Benchmark
+    public String lemmaCacheHit() {
+        return cache.get(nextToken(), lemmatizer::lemmatize);
+    }
+}
@@ -0,0 +1,113 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Weka's Gaussian NaiveBayes with the multinomial engines on synthetic BoW data: time to
+ * score one sparse document, and time to train on the whole matrix.
+ * <p>
+ * {@code flatScalar} runs the flat engine with the Vector API disabled, isolating the gain of the
+ * vectorized sparse dot product from that of the flat layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NaiveBayesBenchmark {
+
+    @Param({"10000"})
+    public int numTerms;
+
+    @Param({"2000"})
+    public int numDocuments;
+
+    @Param({"200"})
+    public int documentLength;
+
+    private SparseMatrix matrix;
+    private List<String> labels;
+    private Instances data;
+    private NaiveBayes weka;
+    private MultinomialNaiveBayes multinomial;
+    private FlatMultinomialNaiveBayes flat;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        matrix = SparseMatrix.fromDocuments(SyntheticCorpus.documents(numDocuments, numTerms, documentLength, 42), numTerms);
+        labels = SyntheticCorpus.labels(numDocuments);
+        data = FeatureMatrixFile.toInstances(matrix, SyntheticCorpus.terms(numTerms), labels);
+        weka = new NaiveBayes();
+        weka.buildClassifier(data);
+        multinomial = new MultinomialNaiveBayes();
+        multinomial.buildClassifier(data);
+        flat = FlatMultinomialNaiveBayes.train(matrix, labels);
+    }
+
+    private Instance nextInstance() {
+        next = next + 1 == data.numInstances() ? 0 : next + 1;
+        return data.instance(next);
+    }
+
+    @Benchmark
+    public double[] scoreWekaNaiveBayes() throws Exception {
+        return weka.distributionForInstance(nextInstance());
+    }
+
+    @Benchmark
+    public double[] scoreMultinomial() {
+        return multinomial.distributionForInstance(nextInstance());
+    }
+
+    @Benchmark
+    public double[] scoreFlat() {
+        return flat.distributionForInstance(nextInstance());
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dapp.vector=false")
+    public double[] scoreFlatScalar() {
+        return flat.distributionForInstance(nextInstance());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object trainWekaNaiveBayes() throws Exception {
+        NaiveBayes model = new NaiveBayes();
+        model.buildClassifier(data);
+        return model;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object trainMultinomial() throws Exception {
+        MultinomialNaiveBayes model = new MultinomialNaiveBayes();
+        model.buildClassifier(data);
+        return model;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object trainFlat() {
+        return FlatMultinomialNaiveBayes.train(matrix, labels);
+    }
+}
@@ -0,0 +1,75 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end prediction latency through {@link NewsClassifier}, from raw text to label, for a
+ * single text and for a batch of {@code batchSize} texts. The model is trained on a synthetic
+ * vocabulary matrix with the classifier named by {@code classifier}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PredictionBenchmark {
+
+    @Param({"multinomial", "flat"})
+    public String classifier;
+
+    @Param({"64"})
+    public int batchSize;
+
+    private NewsClassifier newsClassifier;
+    private List<String> texts;
+    private List<String> batch;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<String> labels = new ArrayList<>();
+        Vocabulary vocabulary = new Vocabulary();
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(0);
+        List<String[]> records = SyntheticCorpus.newsRecords(2000, 300, 6);
+        for (int i = 0; i < records.size(); i++) {
+            builder.addDocument(d_boWords.toTermIds(records.get(i), vocabulary));
+            labels.add(i % 2 == 0 ? "fake" : "true");
+        }
+        Instances data = FeatureMatrixFile.toInstances(builder.build(), vocabulary.terms(), labels);
+        Classifier model = e_model.newClassifier(classifier);
+        model.buildClassifier(data);
+
+        newsClassifier = new NewsClassifier(model, data);
+        texts = SyntheticCorpus.queryTexts(1000, 300, 7);
+        batch = texts.subList(0, batchSize);
+    }
+
+    @Benchmark
+    public NewsClassifier.Prediction classifySingle() throws Exception {
+        next = next + 1 == texts.size() ? 0 : next + 1;
+        return newsClassifier.classify(texts.get(next));
+    }
+
+    @Benchmark
+    public List<NewsClassifier.Prediction> classifyBatch() throws Exception {
+        return newsClassifier.classifyBatch(batch);
+    }
+}
@@ -0,0 +1,141 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Time to first prediction of a short-lived {@code Main classify --text} run: from launching a new
+ * JVM until it prints the predicted class, with and without a class data sharing archive dumped from
+ * one earlier run, as the cds profile does. The model is trained on a synthetic corpus.
+ * <p>
+ * CDS only archives classes loaded from jars, so the compiled classes directories on the benchmark
+ * classpath are packed into jars for the child JVMs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({"false", "true"})
+    public boolean cds;
+
+    private Path directory;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("startup-bench");
+
+        List<String> labels = new ArrayList<>();
+        Vocabulary vocabulary = new Vocabulary();
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(0);
+        List<String[]> records = SyntheticCorpus.newsRecords(2000, 300, 6);
+        for (int i = 0; i < records.size(); i++) {
+            builder.addDocument(d_boWords.toTermIds(records.get(i), vocabulary));
+            labels.add(i % 2 == 0 ? "fake" : "true");
+        }
+        Instances data = FeatureMatrixFile.toInstances(builder.build(), vocabulary.terms(), labels);
+        Classifier model = e_model.newClassifier("multinomial");
+        model.buildClassifier(data);
+        Path modelPath = directory.resolve("NaiveBayes.model");
+        new ModelArtifact(model, data).save(modelPath);
+
+        List<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            Path path = Paths.get(entry);
+            classPath.add(Files.isDirectory(path) ? packClasses(path, directory.resolve("classes" + classPath.size() + ".jar")) : entry);
+        }
+
+        command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (cds) {
+            Path archive = directory.resolve("classify.jsa");
+            command.add("-XX:SharedArchiveFile=" + archive);
+            List<String> dump = new ArrayList<>(command);
+            dump.set(1, "-XX:ArchiveClassesAtExit=" + archive);
+            dump.add("-Xlog:cds=error");
+            dump.addAll(classifyArguments(classPath, modelPath));
+            Process process = new ProcessBuilder(dump).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (process.waitFor() != 0 || !Files.exists(archive)) {
+                throw new IllegalStateException("Dumping the CDS archive failed");
+            }
+        }
+        command.addAll(classifyArguments(classPath, modelPath));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public String firstPrediction() throws Exception {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith("Predicted class:")) {
+                    return line;
+                }
+            }
+            throw new IllegalStateException("classify exited with " + process.waitFor() + " before predicting");
+        } finally {
+            // The time to shut the JVM down is not part of the measurement
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static List<String> classifyArguments(List<String> classPath, Path modelPath) {
+        return List.of("-cp", String.join(File.pathSeparator, classPath), "app.Main", "classify",
+                "--model=" + modelPath, "--text=" + SyntheticCorpus.queryTexts(1, 300, 7).get(0));
+    }
+
+    private static String packClasses(Path classes, Path jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> files = Files.walk(classes)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                out.putNextEntry(new JarEntry(classes.relativize(file).toString().replace(File.separatorChar, '/')));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        }
+        return jar.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package app;
+
+import com.opencsv.CSVWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic data for the benchmarks, so they run offline and compare like with like.
+ * <p>
+ * Term ids follow a Zipf-like distribution; each class boosts its own band of terms so the
+ * classifiers have something to learn. Raw news records are built from the same distribution over
+ * a fixed word list, mixed with capitalization, punctuation, stop words and URLs like the real feeds.
+ */
+final class SyntheticCorpus {
+
+    static final List<String> STOP_WORDS = List.of("the", "a", "an", "and", "of", "to", "in", "is", "that",
+            "for", "on", "with", "as", "was", "it", "by", "at", "he", "she", "they");
+
+    private static final String[] WORDS = ("president election officials said report government senate house "
+            + "campaign vote voters policy statement media news video breaking shocking secret truth exposed "
+            + "claims leaked investigation democrats republicans minister court judge ruling law tax budget "
+            + "economy trade deal talks summit military security border immigration police protest rally "
+            + "supporters critics reporters interview tweeted posted watching believed running stories studies "
+            + "cities countries families children women companies agencies committees leaders denied announced")
+            .split(" ");
+
+    private static final String[] SUBJECTS = {"politics", "News", "worldnews", "politicsNews", "left-news"};
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * Generates raw news records with title, text, subject and date columns.
+     *
+     * @param numRecords  Number of records.
+     * @param textLength  Number of words in each text.
+     * @param seed        Random seed.
+     * @return The records.
+     */
+    static List<String[]> newsRecords(int numRecords, int textLength, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<String[]> records = new ArrayList<>(numRecords);
+        for (int r = 0; r < numRecords; r++) {
+            String title = sentence(random, 8 + random.nextInt(6));
+            String text = sentence(random, textLength);
+            String date = "December " + (1 + random.nextInt(28)) + ", 2017";
+            records.add(new String[]{title, text, SUBJECTS[random.nextInt(SUBJECTS.length)], date});
+        }
+        return records;
+    }
+
+    /**
+     * @return Texts as users would submit them for classification.
+     */
+    static List<String> queryTexts(int count, int textLength, long seed) {
+        List<String> texts = new ArrayList<>(count);
+        for (String[] record : newsRecords(count, textLength, seed)) {
+            texts.add(record[0] + " " + record[1]);
+        }
+        return texts;
+    }
+
+    /**
+     * Writes records as a CSV file with the title, text, subject, date header of the source feeds.
+     */
+    static void writeCsv(Path path, List<String[]> records) throws IOException {
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(path))) {
+            writer.writeNext(new String[]{"title", "text", "subject", "date"});
+            for (String[] record : records) {
+                writer.writeNext(record);
+            }
+        }
+    }
+
+    /**
+     * Writes {@link #STOP_WORDS} one per line, as c_preprocessing1 expects.
+     */
+    static Path writeStopWords(Path directory) throws IOException {
+        return Files.write(directory.resolve("stopwords.txt"), STOP_WORDS);
+    }
+
+    private static String sentence(SplittableRandom random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < length; w++) {
+            if (w > 0) {
+                text.append(' ');
+            }
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                text.append("https://www.example.com/news/").append(random.nextInt(100000));
+            } else if (kind < 5) {
+                text.append(STOP_WORDS.get(random.nextInt(STOP_WORDS.size())));
+            } else {
+                String word = WORDS[zipf(random, WORDS.length)];
+                text.append(kind == 5 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                if (kind == 6) {
+                    text.append(random.nextBoolean() ? "," : ".");
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return Term-id documents of two alternating classes, "fake" and "true".
+     */
+    static List<int[]> documents(int numDocuments, int numTerms, int documentLength, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<int[]> documents = new ArrayList<>(numDocuments);
+        for (int d = 0; d < numDocuments; d++) {
+            int[] termIds = new int[documentLength];
+            int band = d % 2;
+            for (int t = 0; t < documentLength; t++) {
+                int term = zipf(random, numTerms);
+                if (random.nextInt(4) == 0) {
+                    // Class-specific terms interleave by parity
+                    term = (term & ~1) | band;
+                    term = Math.min(term, numTerms - 1);
+                }
+                termIds[t] = term;
+            }
+            documents.add(termIds);
+        }
+        return documents;
+    }
+
+    static List<String> labels(int numDocuments) {
+        List<String> labels = new ArrayList<>(numDocuments);
+        for (int d = 0; d < numDocuments; d++) {
+            labels.add(d % 2 == 0 ? "fake" : "true");
+        }
+        return labels;
+    }
+
+    static List<String> terms(int numTerms) {
+        List<String> terms = new ArrayList<>(numTerms);
+        for (int t = 0; t < numTerms; t++) {
+            terms.add("term" + t);
+        }
+        return terms;
+    }
+
+    /**
+     * Approximates a Zipf draw over [0, n) by inverting a log-uniform distribution.
+     */
+    private static int zipf(SplittableRandom random, int n) {
+        return (int) Math.min(n - 1, Math.exp(random.nextDouble() * Math.log(n + 1.0)) - 1);
+    }
+}
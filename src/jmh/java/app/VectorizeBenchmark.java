@@ -0,0 +1,67 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-document cost of building the Bag-of-Words matrix from preprocessed records: vocabulary
+ * lookup with {@link d_boWords#toTermIds} plus CSR row building, and the {@link FeatureHasher}
+ * alternative. Each invocation builds the matrix of the whole corpus, so the vocabulary grows as it
+ * would in {@code d_boWords}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorizeBenchmark {
+
+    // Corpus size; keep in sync with @OperationsPerInvocation so the score is per document
+    private static final int DOCUMENTS = 2000;
+
+    private List<String[]> records;
+    private FeatureHasher hasher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TextCleaner cleaner = new TextCleaner(new HashSet<>(SyntheticCorpus.STOP_WORDS));
+        records = new ArrayList<>(DOCUMENTS);
+        for (String[] record : SyntheticCorpus.newsRecords(DOCUMENTS, 300, 5)) {
+            records.add(new String[]{cleaner.clean(record[0]), cleaner.clean(record[1]), record[2], record[3], "fake", "0"});
+        }
+        hasher = new FeatureHasher(FeatureHasher.DEFAULT_BUCKETS, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public SparseMatrix vocabularyMatrix() {
+        Vocabulary vocabulary = new Vocabulary();
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(0);
+        for (String[] record : records) {
+            builder.addDocument(d_boWords.toTermIds(record, vocabulary));
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public SparseMatrix hashedMatrix() {
+        return d_boWords.hashRecords(records, hasher);
+    }
+}
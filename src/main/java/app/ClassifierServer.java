@@ -0,0 +1,307 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local HTTP inference server for a saved model artifact.
+ * <p>
+ * {@code POST /classify} takes the article text as the request body and answers with JSON holding
+ * the predicted label and the probability of every class. {@code GET /health} answers "ok". Requests
+ * are handled on virtual threads and put on a queue of at most {@code --max-pending} texts; when it is
+ * full the request is answered with 503 right away instead of piling up. {@code --scorers} batcher
+ * threads take up to {@code --batch-size} texts each from the queue, waiting at most
+ * {@code --batch-delay-ms} for a batch to fill, and score every batch in one call to
+ * {@link NewsClassifier#scoreBatch}. If a batch fails its texts are scored one by one, so only the
+ * texts that fail get a 500. Bodies longer than {@code --max-body-bytes} are refused with 413 without
+ * being read in full. The server only binds to the loopback address.
+ * <p>
+ * Texts that are near-duplicates of an article in the classifier's verdict cache are answered by the
+ * handler directly, with {@code "cached":true} and the similarity in the JSON, and never queued. The
+ * cache is read from {@code --verdict-cache}, or from {@code <model>.lsh} if that file exists.
+ * <p>
+ * Batches are recorded as runs of the {@code serve_batch} stage, whose records are the texts scored,
+ * and the {@code server_batch_size_mean} gauge.
+ * <p>
+ * Usage: {@code ClassifierServer [--model=path] [--port=8080] [--batch-size=64] [--batch-delay-ms=1]
+ * [--scorers=n] [--max-pending=256] [--max-body-bytes=1048576] [--verdict-cache=path]}
+ */
+public class ClassifierServer {
+
+    private final HttpServer server;
+    private final List<Thread> scorers = new ArrayList<>();
+    private final BlockingQueue<PendingRequest> queue;
+    private final NewsClassifier classifier;
+    private final int batchSize;
+    private final long batchDelayNanos;
+    private final int maxBodyBytes;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedTexts = new LongAdder();
+
+    /**
+     * Creates a server; call {@link #start()} to begin accepting requests.
+     *
+     * @param classifier   The classifier to serve.
+     * @param port         Loopback port to listen on, or 0 for any free port.
+     * @param batchSize    Maximum number of texts scored together.
+     * @param batchDelayMs Maximum time the first request of a batch waits for more to arrive.
+     * @param scorers      Number of threads scoring batches.
+     * @param maxPending   Maximum number of texts waiting to be scored; requests beyond it get 503.
+     * @param maxBodyBytes Maximum size of a request body; larger requests get 413.
+     * @throws IOException If the port cannot be bound.
+     */
+    public ClassifierServer(NewsClassifier classifier, int port, int batchSize, long batchDelayMs, int scorers,
+                            int maxPending, int maxBodyBytes) throws IOException {
+        this.classifier = classifier;
+        this.maxBodyBytes = maxBodyBytes;
+        this.batchSize = batchSize;
+        this.batchDelayNanos = TimeUnit.MILLISECONDS.toNanos(batchDelayMs);
+        this.queue = new ArrayBlockingQueue<>(maxPending);
+
+        // Without TCP_NODELAY small responses stall on delayed ACKs; read once when the first server is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/classify", this::handleClassify);
+        this.server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "ok"));
+        for (int i = 0; i < scorers; i++) {
+            Thread scorer = new Thread(this::scoreBatches, "classifier-batcher-" + i);
+            scorer.setDaemon(true);
+            this.scorers.add(scorer);
+        }
+        PipelineMetrics.gauge("server_queue_depth", queue::size);
+        PipelineMetrics.gauge("server_batch_size_mean", () -> batches.sum() == 0 ? 0
+                : (double) batchedTexts.sum() / batches.sum());
+    }
+
+    public static void main(String[] args) throws Exception {
+        String modelPath = "NaiveBayes.model";
+        int port = 8080;
+        int batchSize = 64;
+        long batchDelayMs = 1;
+        int scorers = Runtime.getRuntime().availableProcessors();
+        int maxPending = 256;
+        int maxBodyBytes = 1 << 20;
+        String verdictCachePath = null;
+        for (String arg : args) {
+            if (arg.startsWith("--model=")) {
+                modelPath = arg.substring("--model=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--batch-size=")) {
+                batchSize = Integer.parseInt(arg.substring("--batch-size=".length()));
+            } else if (arg.startsWith("--batch-delay-ms=")) {
+                batchDelayMs = Long.parseLong(arg.substring("--batch-delay-ms=".length()));
+            } else if (arg.startsWith("--scorers=")) {
+                scorers = Integer.parseInt(arg.substring("--scorers=".length()));
+            } else if (arg.startsWith("--max-pending=")) {
+                maxPending = Integer.parseInt(arg.substring("--max-pending=".length()));
+            } else if (arg.startsWith("--max-body-bytes=")) {
+                maxBodyBytes = Integer.parseInt(arg.substring("--max-body-bytes=".length()));
+            } else if (arg.startsWith("--verdict-cache=")) {
+                verdictCachePath = arg.substring("--verdict-cache=".length());
+            }
+        }
+
+        NewsClassifier classifier = new NewsClassifier(ModelArtifact.load(Paths.get(modelPath)),
+                MinHashIndex.loadVerdictCache(verdictCachePath, modelPath));
+        ClassifierServer server = new ClassifierServer(classifier, port, batchSize, batchDelayMs, scorers, maxPending,
+                maxBodyBytes);
+        server.start();
+        System.out.println("Classifier listening on http://localhost:" + server.port() + "/classify");
+    }
+
+    public void start() {
+        for (Thread scorer : scorers) {
+            scorer.start();
+        }
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        for (Thread scorer : scorers) {
+            scorer.interrupt();
+        }
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleClassify(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "text/plain", "POST the article text to /classify");
+                return;
+            }
+            String text = readBody(exchange);
+            if (text == null) {
+                respond(exchange, 413, "text/plain", "Request body larger than " + maxBodyBytes + " bytes");
+                return;
+            }
+
+            NewsClassifier.Prediction prediction = classifier.cachedVerdict(text);
+            if (prediction == null) {
+                PendingRequest request = new PendingRequest(text);
+                if (!queue.offer(request)) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respond(exchange, 503, "text/plain", "Server busy: " + queue.size() + " requests pending");
+                    return;
+                }
+                prediction = request.result.get();
+            }
+            respond(exchange, 200, "application/json", toJson(prediction));
+        } catch (ExecutionException e) {
+            respond(exchange, 500, "text/plain", "Classification failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "text/plain", "Server shutting down");
+        }
+    }
+
+    /**
+     * Reads the request body as UTF-8, refusing it by its Content-Length if it declares one and
+     * otherwise by reading at most one byte past the limit.
+     *
+     * @return The body, or null if it is larger than {@link #maxBodyBytes}.
+     */
+    private String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (declared != null && Long.parseLong(declared.trim()) > maxBodyBytes) {
+                return null;
+            }
+            byte[] bytes = body.readNBytes(maxBodyBytes + 1);
+            return bytes.length > maxBodyBytes ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Scoring loop of one batcher thread: takes the first waiting request, gathers more until the
+     * batch is full or the batch delay has passed, and scores them together.
+     */
+    private void scoreBatches() {
+        List<PendingRequest> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + batchDelayNanos;
+                while (batch.size() < batchSize) {
+                    PendingRequest next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                score(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (PendingRequest request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Scores a batch in one call; if that fails, scores its texts one by one so that only the failing
+     * ones are answered with an error.
+     */
+    private void score(List<PendingRequest> batch) {
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("serve_batch");
+        List<String> texts = new ArrayList<>(batch.size());
+        for (PendingRequest request : batch) {
+            texts.add(request.text); // The handlers already consulted the verdict cache
+        }
+        try {
+            List<NewsClassifier.Prediction> predictions = classifier.scoreBatch(texts);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(predictions.get(i));
+            }
+        } catch (Exception batchFailure) {
+            for (PendingRequest request : batch) {
+                try {
+                    request.result.complete(classifier.score(request.text));
+                } catch (Exception e) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+        }
+        stage.stop(batch.size());
+        batches.increment();
+        batchedTexts.add(batch.size());
+    }
+
+    private String toJson(NewsClassifier.Prediction prediction) {
+        StringBuilder json = new StringBuilder("{\"label\":").append(quote(prediction.label())).append(",\"probabilities\":{");
+        List<String> classValues = classifier.classValues();
+        for (int c = 0; c < classValues.size(); c++) {
+            if (c > 0) {
+                json.append(',');
+            }
+            json.append(quote(classValues.get(c))).append(':').append(prediction.distribution()[c]);
+        }
+        json.append('}');
+        if (prediction.cached()) {
+            json.append(",\"cached\":true,\"similarity\":").append(prediction.similarity());
+        }
+        return json.append('}').toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * A text waiting to be scored and the future its handler blocks on.
+     */
+    private static class PendingRequest {
+
+        final String text;
+        final CompletableFuture<NewsClassifier.Prediction> result = new CompletableFuture<>();
+
+        PendingRequest(String text) {
+            this.text = text;
+        }
+    }
+}
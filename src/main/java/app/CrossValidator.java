@@ -0,0 +1,245 @@
+package app;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Stratified k-fold cross-validation that trains and evaluates every fold independently on a
+ * fork-join pool.
+ * <p>
+ * Each fold gets its own copy of the classifier and its own {@link Evaluation}, so per-fold metrics
+ * describe that fold alone. The fold confusion matrices are summed into the aggregate at the end.
+ * Every running fold holds its own training split, so memory grows with the parallelism.
+ */
+public class CrossValidator {
+
+    private final int numFolds;
+    private final int parallelism;
+    private final long seed;
+
+    /**
+     * @param numFolds    Number of folds.
+     * @param parallelism Maximum number of folds trained at the same time.
+     * @param seed        Seed for shuffling the data before stratification.
+     */
+    public CrossValidator(int numFolds, int parallelism, long seed) {
+        if (numFolds < 2 || parallelism < 1) {
+            throw new IllegalArgumentException("Need at least 2 folds and 1 thread");
+        }
+        this.numFolds = numFolds;
+        this.parallelism = parallelism;
+        this.seed = seed;
+    }
+
+    /**
+     * Cross-validates a classifier.
+     *
+     * @param data     The labeled dataset; it is not modified.
+     * @param template The untrained classifier, copied for every fold.
+     * @return Per-fold and aggregate confusion matrices.
+     */
+    public Result run(Instances data, Classifier template) throws Exception {
+        Instances folds = new Instances(data);
+        folds.randomize(new Random(seed));
+        folds.stratify(numFolds);
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, numFolds));
+        try {
+            List<Future<double[][]>> tasks = new ArrayList<>(numFolds);
+            for (int fold = 0; fold < numFolds; fold++) {
+                int foldIndex = fold;
+                tasks.add(pool.submit(() -> evaluateFold(folds, template, foldIndex)));
+            }
+
+            List<double[][]> foldMatrices = new ArrayList<>(numFolds);
+            for (Future<double[][]> task : tasks) {
+                foldMatrices.add(task.get());
+            }
+            return new Result(foldMatrices, data.numClasses());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Cross-validates a {@link MultinomialNaiveBayes} on the rows of a memory-mapped feature matrix,
+     * without copying the matrix into {@link Instances}: each fold's model learns the other folds' rows
+     * and scores its own straight from the mapping. Rows are shuffled with the seed and dealt to the
+     * folds class by class, as Weka's stratification does, but the folds are not the ones
+     * {@link #run(Instances, Classifier)} would pick. {@link FlatMultinomialNaiveBayes} predicts the
+     * same as the model it is compiled from, so this evaluates it too.
+     *
+     * @param matrix The labeled feature matrix.
+     * @return Per-fold and aggregate confusion matrices, indexed by the matrix's class values.
+     */
+    public Result run(FeatureMatrixFile matrix) throws Exception {
+        int[] foldOfRow = stratifiedFolds(matrix);
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, numFolds));
+        try {
+            List<Future<double[][]>> tasks = new ArrayList<>(numFolds);
+            for (int fold = 0; fold < numFolds; fold++) {
+                int foldIndex = fold;
+                tasks.add(pool.submit(() -> evaluateFold(matrix, foldOfRow, foldIndex)));
+            }
+
+            List<double[][]> foldMatrices = new ArrayList<>(numFolds);
+            for (Future<double[][]> task : tasks) {
+                foldMatrices.add(task.get());
+            }
+            return new Result(foldMatrices, matrix.classValues().size());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private int[] stratifiedFolds(FeatureMatrixFile matrix) {
+        int numRows = matrix.numRows();
+        int[] order = new int[numRows];
+        for (int row = 0; row < numRows; row++) {
+            order[row] = row;
+        }
+        Random random = new Random(seed);
+        for (int i = numRows - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        int[] foldOfRow = new int[numRows];
+        int dealt = 0;
+        for (int c = 0; c < matrix.classValues().size(); c++) {
+            for (int row : order) {
+                if (matrix.classIndex(row) == c) {
+                    foldOfRow[row] = dealt++ % numFolds;
+                }
+            }
+        }
+        return foldOfRow;
+    }
+
+    private static double[][] evaluateFold(FeatureMatrixFile matrix, int[] foldOfRow, int fold) {
+        MultinomialNaiveBayes model = new MultinomialNaiveBayes(matrix.classValues(), matrix.vocabulary());
+        for (int row = 0; row < matrix.numRows(); row++) {
+            if (foldOfRow[row] != fold) {
+                model.learn(matrix, row);
+            }
+        }
+        int numClasses = matrix.classValues().size();
+        double[][] confusion = new double[numClasses][numClasses];
+        for (int row = 0; row < matrix.numRows(); row++) {
+            if (foldOfRow[row] == fold) {
+                confusion[matrix.classIndex(row)][Utils.maxIndex(model.distributionForRow(matrix, row))]++;
+            }
+        }
+        return confusion;
+    }
+
+    private double[][] evaluateFold(Instances folds, Classifier template, int fold) throws Exception {
+        Instances train = folds.trainCV(numFolds, fold);
+        Instances test = folds.testCV(numFolds, fold);
+
+        Classifier model = AbstractClassifier.makeCopy(template);
+        model.buildClassifier(train);
+        Evaluation evaluation = new Evaluation(train);
+        evaluation.evaluateModel(model, test);
+        return evaluation.confusionMatrix();
+    }
+
+    /**
+     * Confusion matrices of a cross-validation run, indexed [actual][predicted].
+     */
+    public static class Result {
+
+        private final List<double[][]> foldMatrices;
+        private final double[][] aggregate;
+
+        Result(List<double[][]> foldMatrices, int numClasses) {
+            this.foldMatrices = foldMatrices;
+            this.aggregate = new double[numClasses][numClasses];
+            for (double[][] matrix : foldMatrices) {
+                for (int i = 0; i < numClasses; i++) {
+                    for (int j = 0; j < numClasses; j++) {
+                        aggregate[i][j] += matrix[i][j];
+                    }
+                }
+            }
+        }
+
+        public int numFolds() {
+            return foldMatrices.size();
+        }
+
+        public double[][] foldMatrix(int fold) {
+            return foldMatrices.get(fold);
+        }
+
+        public double[][] aggregateMatrix() {
+            return aggregate;
+        }
+
+        /**
+         * @return Fraction of correctly classified instances in the matrix.
+         */
+        public static double accuracy(double[][] matrix) {
+            double correct = 0;
+            double total = 0;
+            for (int i = 0; i < matrix.length; i++) {
+                for (int j = 0; j < matrix[i].length; j++) {
+                    total += matrix[i][j];
+                    if (i == j) {
+                        correct += matrix[i][j];
+                    }
+                }
+            }
+            return total == 0 ? 0 : correct / total;
+        }
+
+        /**
+         * @return Precision of the given class, or 0 if it was never predicted.
+         */
+        public static double precision(double[][] matrix, int classIndex) {
+            double predicted = 0;
+            for (double[] row : matrix) {
+                predicted += row[classIndex];
+            }
+            return predicted == 0 ? 0 : matrix[classIndex][classIndex] / predicted;
+        }
+
+        /**
+         * @return Recall of the given class, or 0 if it never occurred.
+         */
+        public static double recall(double[][] matrix, int classIndex) {
+            double actual = 0;
+            for (double count : matrix[classIndex]) {
+                actual += count;
+            }
+            return actual == 0 ? 0 : matrix[classIndex][classIndex] / actual;
+        }
+
+        /**
+         * @return F1 score of the given class, or 0 if precision and recall are both 0.
+         */
+        public static double f1(double[][] matrix, int classIndex) {
+            double precision = precision(matrix, classIndex);
+            double recall = recall(matrix, classIndex);
+            return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+        }
+    }
+}
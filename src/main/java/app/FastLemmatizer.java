@@ -0,0 +1,170 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * POS-free lemmatizer for text that has already been cleaned to lowercase letter tokens.
+ * <p>
+ * Tokens found in the precomputed dictionary get their dictionary lemma; all other tokens go
+ * through a small set of English suffix rules (plural and -ed/-ing stripping in the style of
+ * Porter's step 1). It is far cheaper than the CoreNLP pipeline but less accurate, since it cannot
+ * use part-of-speech context.
+ */
+public class FastLemmatizer {
+
+    private final Map<String, String> dictionary = new HashMap<>();
+
+    /**
+     * Loads a tab-separated token/lemma dictionary, such as one written by
+     * {@link LemmaCache#saveDictionary(String)}. Entries override earlier ones for the same token.
+     *
+     * @param filePath The path to the dictionary file.
+     * @throws IOException If the file cannot be read.
+     */
+    public void loadDictionary(String filePath) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(filePath), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                dictionary.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+    }
+
+    /**
+     * @return Number of dictionary entries.
+     */
+    public int dictionarySize() {
+        return dictionary.size();
+    }
+
+    /**
+     * @return A fingerprint of the dictionary entries that does not depend on the order they were loaded in.
+     */
+    public long dictionaryFingerprint() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, String> entry : new TreeMap<>(dictionary).entrySet()) {
+                digest.update((entry.getKey() + '\t' + entry.getValue() + '\n').getBytes(StandardCharsets.UTF_8));
+            }
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    /**
+     * Lemmatizes space-separated cleaned text.
+     *
+     * @param text The cleaned text string.
+     * @return The lemmatized text, with tokens separated by single spaces.
+     */
+    public String lemmatizeText(String text) {
+        StringBuilder lemmatizedText = new StringBuilder(text.length());
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf(' ', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            if (end > start) {
+                if (lemmatizedText.length() > 0) {
+                    lemmatizedText.append(' ');
+                }
+                lemmatizedText.append(lemmatize(text.substring(start, end)));
+            }
+            start = end + 1;
+        }
+        return lemmatizedText.toString();
+    }
+
+    /**
+     * Lemmatizes a single lowercase token.
+     *
+     * @param token The token.
+     * @return Its lemma.
+     */
+    public String lemmatize(String token) {
+        String lemma = dictionary.get(token);
+        return lemma != null ? lemma : applyRules(token);
+    }
+
+    private static String applyRules(String token) {
+        int length = token.length();
+        if (length <= 3) {
+            return token;
+        }
+
+        // Plurals and third-person singular
+        if (token.endsWith("sses")) {
+            return token.substring(0, length - 2);
+        }
+        if (token.endsWith("ies") && length > 4) {
+            return token.substring(0, length - 3) + "y";
+        }
+        if (token.endsWith("ches") || token.endsWith("shes") || token.endsWith("xes") || token.endsWith("zzes")) {
+            return token.substring(0, length - 2);
+        }
+        if (token.endsWith("s") && !token.endsWith("ss") && !token.endsWith("us") && !token.endsWith("is")) {
+            return token.substring(0, length - 1);
+        }
+
+        // Past tense and progressive forms
+        if (token.endsWith("ied") && length > 4) {
+            return token.substring(0, length - 3) + "y";
+        }
+        if (token.endsWith("eed")) {
+            return token;
+        }
+        if (token.endsWith("ed") && hasVowel(token, length - 2)) {
+            return restoreStem(token.substring(0, length - 2));
+        }
+        if (token.endsWith("ing") && length > 5 && hasVowel(token, length - 3)) {
+            return restoreStem(token.substring(0, length - 3));
+        }
+        return token;
+    }
+
+    /**
+     * Repairs a stem left by stripping -ed or -ing: undoubles a final consonant ("stopp" → "stop")
+     * and restores a dropped final e ("creat" → "create", "hop" → "hope").
+     */
+    private static String restoreStem(String stem) {
+        int length = stem.length();
+        if (stem.endsWith("at") || stem.endsWith("bl") || stem.endsWith("iz")) {
+            return stem + "e";
+        }
+        if (length >= 2 && stem.charAt(length - 1) == stem.charAt(length - 2)
+                && !isVowel(stem, length - 1) && "lsz".indexOf(stem.charAt(length - 1)) < 0) {
+            return stem.substring(0, length - 1);
+        }
+        if (length >= 3 && length <= 4 && !isVowel(stem, length - 1) && isVowel(stem, length - 2)
+                && !isVowel(stem, length - 3) && "wxy".indexOf(stem.charAt(length - 1)) < 0) {
+            return stem + "e";
+        }
+        return stem;
+    }
+
+    private static boolean hasVowel(String token, int end) {
+        for (int i = 0; i < end; i++) {
+            if (isVowel(token, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isVowel(String token, int index) {
+        return "aeiou".indexOf(token.charAt(index)) >= 0;
+    }
+}
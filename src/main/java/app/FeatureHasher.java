@@ -0,0 +1,202 @@
+package app;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Vocabulary-free vectorizer mapping tokens into a fixed number of buckets (the hashing trick).
+ * <p>
+ * Every token is hashed with 32-bit MurmurHash3; the lower 31 bits select the bucket and, for a
+ * signed hasher, the top bit selects whether the token adds +1 or -1 to it, so colliding tokens tend to
+ * cancel out instead of all inflating the same count. Memory is bounded by the bucket count and no
+ * pass over the corpus is needed before the first row can be produced.
+ * <p>
+ * The stages hash unsigned unless asked otherwise: the naive Bayes models need counts, and in a
+ * signed row two tokens of opposite sign in the same bucket have already cancelled, so the model sees
+ * a smaller count, or none at all when the sum is 0. Signing only pays off for linear models that can
+ * use negative weights.
+ * <p>
+ * The hasher's configuration is carried by the bucket attribute names ({@code #h0..} when signed,
+ * {@code #u0..} when unsigned), so any feature matrix, ARFF file or model artifact built from hashed
+ * rows identifies its hasher through {@link #fromVocabulary(List)}. Preprocessed tokens only contain
+ * letters and therefore never clash with these names.
+ */
+public class FeatureHasher implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_BUCKETS = 1 << 16;
+
+    private static final int SEED = 0x9747B28C;
+
+    private final int numBuckets;
+    private final boolean signed;
+
+    /**
+     * @param numBuckets Number of feature columns.
+     * @param signed     Whether each token carries a hash-derived sign.
+     */
+    public FeatureHasher(int numBuckets, boolean signed) {
+        if (numBuckets < 1) {
+            throw new IllegalArgumentException("numBuckets must be positive");
+        }
+        this.numBuckets = numBuckets;
+        this.signed = signed;
+    }
+
+    /**
+     * Recognizes the bucket names written by {@link #bucketNames()}.
+     *
+     * @param vocabulary Attribute names in column order, excluding the class.
+     * @return The hasher that produced the columns, or null for an exact vocabulary.
+     */
+    public static FeatureHasher fromVocabulary(List<String> vocabulary) {
+        if (vocabulary.isEmpty()) {
+            return null;
+        }
+        for (boolean signed : new boolean[]{true, false}) {
+            FeatureHasher hasher = new FeatureHasher(vocabulary.size(), signed);
+            if (vocabulary.get(0).equals(hasher.bucketName(0))
+                    && vocabulary.get(vocabulary.size() - 1).equals(hasher.bucketName(vocabulary.size() - 1))) {
+                return hasher;
+            }
+        }
+        return null;
+    }
+
+    public int numBuckets() {
+        return numBuckets;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    /**
+     * @return The attribute names of all buckets, in column order.
+     */
+    public List<String> bucketNames() {
+        List<String> names = new ArrayList<>(numBuckets);
+        for (int bucket = 0; bucket < numBuckets; bucket++) {
+            names.add(bucketName(bucket));
+        }
+        return names;
+    }
+
+    /**
+     * Tokenizes a text on whitespace, lowercases it like {@link d_boWords#toTermIds} and hashes it.
+     *
+     * @param text The text.
+     * @return The row of summed bucket values, with ascending columns and no zero values; a signed
+     * bucket whose tokens cancel out is left out.
+     */
+    public Row hashText(String text) {
+        String[] tokens = text.split("\\s+");
+        // Bucket in the upper bits, sign in bit 0, so sorting groups equal buckets together
+        long[] codes = new long[tokens.length];
+        int count = 0;
+        for (String token : tokens) {
+            if (!token.isEmpty()) {
+                int hash = murmur3(token.toLowerCase());
+                long bucket = (hash & 0x7FFFFFFF) % numBuckets;
+                codes[count++] = bucket << 1 | (signed ? hash >>> 31 : 0);
+            }
+        }
+        Arrays.sort(codes, 0, count);
+
+        int[] columns = new int[count];
+        int[] values = new int[count];
+        int length = 0;
+        int i = 0;
+        while (i < count) {
+            int bucket = (int) (codes[i] >>> 1);
+            int value = 0;
+            while (i < count && (codes[i] >>> 1) == bucket) {
+                value += (codes[i] & 1) == 0 ? 1 : -1;
+                i++;
+            }
+            if (value != 0) {
+                columns[length] = bucket;
+                values[length++] = value;
+            }
+        }
+        return new Row(columns, values, length);
+    }
+
+    /**
+     * Hashes the title and text of a preprocessed record.
+     *
+     * @param record The preprocessed record (title in column 0, text in column 1).
+     * @return The hashed row.
+     */
+    public Row hashRecord(String[] record) {
+        return hashText(record[0] + " " + record[1]);
+    }
+
+    private String bucketName(int bucket) {
+        return (signed ? "#h" : "#u") + bucket;
+    }
+
+    /**
+     * MurmurHash3 (x86, 32-bit) over the UTF-16 code units of a string, two per block.
+     */
+    static int murmur3(CharSequence text) {
+        int length = text.length();
+        int h = SEED;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            int k = text.charAt(i) | (text.charAt(i + 1) << 16);
+            k *= 0xCC9E2D51;
+            k = Integer.rotateLeft(k, 15);
+            k *= 0x1B873593;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xE6546B64;
+        }
+        if (i < length) {
+            int k = text.charAt(i);
+            k *= 0xCC9E2D51;
+            k = Integer.rotateLeft(k, 15);
+            k *= 0x1B873593;
+            h ^= k;
+        }
+        h ^= length * 2;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * A sparse feature row: parallel column and value arrays, of which the first {@code length}
+     * entries are used.
+     */
+    public static class Row {
+
+        private final int[] columns;
+        private final int[] values;
+        private final int length;
+
+        Row(int[] columns, int[] values, int length) {
+            this.columns = columns;
+            this.values = values;
+            this.length = length;
+        }
+
+        public int[] columns() {
+            return columns;
+        }
+
+        public int[] values() {
+            return values;
+        }
+
+        public int length() {
+            return length;
+        }
+    }
+}
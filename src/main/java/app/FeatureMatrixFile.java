@@ -0,0 +1,395 @@
+package app;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary on-disk format for the BoW feature matrix, read through a memory-mapped {@link FileChannel}.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   int   magic "BOWM", int version
+ *   int   numRows, int numColumns, int nonZeros
+ *   long  offsets of the labels, row pointer, column and value sections
+ *   int   numClassValues, then each class value as (int byteLength, UTF-8 bytes)
+ *   terms numColumns vocabulary terms as (int byteLength, UTF-8 bytes)
+ *   int[numRows]      class value index of every row
+ *   int[numRows + 1]  CSR row pointers
+ *   int[nonZeros]     CSR column (term id) of every entry
+ *   int[nonZeros]     CSR count of every entry
+ * </pre>
+ * The count arrays are exposed as {@link IntBuffer} views over the mapping, so opening a file only
+ * copies the vocabulary and class values onto the heap. Each section must stay below 2 GB.
+ */
+public class FeatureMatrixFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x424F574D; // "BOWM"
+    private static final int VERSION = 1;
+
+    // Byte size of the fixed-length part of the header, up to and including the section offsets
+    private static final int FIXED_HEADER_BYTES = 4 * 5 + 8 * 4;
+
+    private final FileChannel channel;
+    private final int numRows;
+    private final int numColumns;
+    private final int nonZeros;
+    private final List<String> classValues;
+    private final List<String> vocabulary;
+    private final IntBuffer labels;
+    private final IntBuffer rowPointers;
+    private final IntBuffer columns;
+    private final IntBuffer values;
+    private Instances header;
+
+    private FeatureMatrixFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        MappedByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, FIXED_HEADER_BYTES);
+        if (fixed.getInt() != MAGIC) {
+            throw new IOException("Not a feature matrix file");
+        }
+        int version = fixed.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported feature matrix version " + version);
+        }
+        numRows = fixed.getInt();
+        numColumns = fixed.getInt();
+        nonZeros = fixed.getInt();
+        long labelsOffset = fixed.getLong();
+        long rowPointersOffset = fixed.getLong();
+        long columnsOffset = fixed.getLong();
+        long valuesOffset = fixed.getLong();
+
+        MappedByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, FIXED_HEADER_BYTES,
+                labelsOffset - FIXED_HEADER_BYTES);
+        classValues = readStrings(strings, strings.getInt());
+        vocabulary = readStrings(strings, numColumns);
+
+        labels = mapInts(labelsOffset, numRows);
+        rowPointers = mapInts(rowPointersOffset, numRows + 1);
+        columns = mapInts(columnsOffset, nonZeros);
+        values = mapInts(valuesOffset, nonZeros);
+    }
+
+    /**
+     * Memory-maps a feature matrix file.
+     *
+     * @param path The file written by {@link #write}.
+     * @return The opened file; close it to release the channel.
+     * @throws IOException If the file cannot be read or is not a feature matrix.
+     */
+    public static FeatureMatrixFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new FeatureMatrixFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a labeled BoW matrix with its vocabulary.
+     *
+     * @param path       The destination file.
+     * @param matrix     The BoW count matrix.
+     * @param vocabulary Terms in column order.
+     * @param labels     Label of every row.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path path, SparseMatrix matrix, List<String> vocabulary, List<String> labels) throws IOException {
+        List<String> classValues = new ArrayList<>(new LinkedHashSet<>(labels));
+        byte[][] encodedClassValues = encode(classValues);
+        byte[][] encodedTerms = encode(vocabulary);
+
+        long labelsOffset = FIXED_HEADER_BYTES + 4 + encodedSize(encodedClassValues) + encodedSize(encodedTerms);
+        long rowPointersOffset = labelsOffset + 4L * matrix.numRows();
+        long columnsOffset = rowPointersOffset + 4L * (matrix.numRows() + 1);
+        long valuesOffset = columnsOffset + 4L * matrix.nonZeros();
+
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(matrix.numRows());
+            out.writeInt(vocabulary.size());
+            out.writeInt(matrix.nonZeros());
+            out.writeLong(labelsOffset);
+            out.writeLong(rowPointersOffset);
+            out.writeLong(columnsOffset);
+            out.writeLong(valuesOffset);
+
+            out.writeInt(encodedClassValues.length);
+            writeStrings(out, encodedClassValues);
+            writeStrings(out, encodedTerms);
+
+            for (String label : labels) {
+                out.writeInt(classValues.indexOf(label));
+            }
+            for (int row = 0; row <= matrix.numRows(); row++) {
+                out.writeInt(row < matrix.numRows() ? matrix.rowStart(row) : matrix.nonZeros());
+            }
+            for (int k = 0; k < matrix.nonZeros(); k++) {
+                out.writeInt(matrix.column(k));
+            }
+            for (int k = 0; k < matrix.nonZeros(); k++) {
+                out.writeInt(matrix.value(k));
+            }
+        }
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numColumns() {
+        return numColumns;
+    }
+
+    public int nonZeros() {
+        return nonZeros;
+    }
+
+    public List<String> vocabulary() {
+        return vocabulary;
+    }
+
+    public List<String> classValues() {
+        return classValues;
+    }
+
+    /**
+     * @return The class value of a row.
+     */
+    public String label(int row) {
+        return classValues.get(labels.get(row));
+    }
+
+    /**
+     * @return The index of a row's class value in {@link #classValues()}.
+     */
+    public int classIndex(int row) {
+        return labels.get(row);
+    }
+
+    public int rowStart(int row) {
+        return rowPointers.get(row);
+    }
+
+    public int rowEnd(int row) {
+        return rowPointers.get(row + 1);
+    }
+
+    public int column(int entry) {
+        return columns.get(entry);
+    }
+
+    public int value(int entry) {
+        return values.get(entry);
+    }
+
+    /**
+     * @return The class value of every row, in row order.
+     */
+    public List<String> labels() {
+        List<String> rowLabels = new ArrayList<>(numRows);
+        for (int row = 0; row < numRows; row++) {
+            rowLabels.add(label(row));
+        }
+        return rowLabels;
+    }
+
+    /**
+     * Copies the counts onto the heap, for stages that rewrite the matrix.
+     *
+     * @return The matrix in CSR form.
+     */
+    public SparseMatrix toSparseMatrix() {
+        int[] rowPointerArray = new int[numRows + 1];
+        int[] columnArray = new int[nonZeros];
+        int[] valueArray = new int[nonZeros];
+        rowPointers.get(0, rowPointerArray);
+        columns.get(0, columnArray);
+        values.get(0, valueArray);
+        return new SparseMatrix(numColumns, rowPointerArray, columnArray, valueArray);
+    }
+
+    /**
+     * Returns the Weka header: the nominal Label class attribute at index 0 followed by one numeric
+     * attribute per term. Built once and shared by every instance created from this file.
+     *
+     * @return An empty dataset describing the attributes.
+     */
+    public synchronized Instances header() {
+        if (header == null) {
+            header = createHeader(classValues, vocabulary);
+        }
+        return header;
+    }
+
+    /**
+     * Builds the Weka header used for feature matrices: the nominal Label class attribute at index 0
+     * followed by one numeric attribute per term.
+     *
+     * @param classValues The class values.
+     * @param vocabulary  Terms in column order.
+     * @return An empty dataset with the class index set.
+     */
+    public static Instances createHeader(List<String> classValues, List<String> vocabulary) {
+        ArrayList<Attribute> attributes = new ArrayList<>(vocabulary.size() + 1);
+        attributes.add(new Attribute("Label", new ArrayList<>(classValues)));
+        for (String term : vocabulary) {
+            attributes.add(new Attribute(term));
+        }
+        Instances header = new Instances("BagOfWords", attributes, 0);
+        header.setClassIndex(0);
+        return header;
+    }
+
+    /**
+     * Converts an in-memory matrix to a Weka dataset with the same layout as {@link #toInstances()}.
+     *
+     * @param matrix     The BoW count matrix.
+     * @param vocabulary Terms in column order.
+     * @param labels     Label of every row.
+     * @return The dataset of sparse instances with the class index set to 0.
+     */
+    public static Instances toInstances(SparseMatrix matrix, List<String> vocabulary, List<String> labels) {
+        List<String> classValues = new ArrayList<>(new LinkedHashSet<>(labels));
+        Instances data = createHeader(classValues, vocabulary);
+        for (int row = 0; row < matrix.numRows(); row++) {
+            int start = matrix.rowStart(row);
+            int length = matrix.rowEnd(row) - start;
+            int[] indices = new int[length + 1];
+            double[] attributeValues = new double[length + 1];
+            attributeValues[0] = classValues.indexOf(labels.get(row));
+            for (int i = 0; i < length; i++) {
+                indices[i + 1] = matrix.column(start + i) + 1;
+                attributeValues[i + 1] = matrix.value(start + i);
+            }
+            data.add(new SparseInstance(1.0, attributeValues, indices, vocabulary.size() + 1));
+        }
+        return data;
+    }
+
+    /**
+     * Creates the Weka instance for one row, reading its counts straight from the mapping.
+     *
+     * @param row The row index.
+     * @return A sparse instance attached to {@link #header()}.
+     */
+    public Instance instance(int row) {
+        int start = rowStart(row);
+        int length = rowEnd(row) - start;
+        int[] indices = new int[length + 1];
+        double[] attributeValues = new double[length + 1];
+        indices[0] = 0;
+        attributeValues[0] = labels.get(row);
+        for (int i = 0; i < length; i++) {
+            indices[i + 1] = columns.get(start + i) + 1;
+            attributeValues[i + 1] = values.get(start + i);
+        }
+        Instance instance = new SparseInstance(1.0, attributeValues, indices, numColumns + 1);
+        instance.setDataset(header());
+        return instance;
+    }
+
+    /**
+     * Lazily iterates the rows as Weka instances, creating each one only when it is requested.
+     *
+     * @return An iterator over all rows.
+     */
+    public Iterator<Instance> instances() {
+        return new Iterator<>() {
+            private int row;
+
+            @Override
+            public boolean hasNext() {
+                return row < numRows;
+            }
+
+            @Override
+            public Instance next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return instance(row++);
+            }
+        };
+    }
+
+    /**
+     * Materializes all rows into a Weka dataset, for algorithms that need random access. Count models
+     * do not need it: {@link MultinomialNaiveBayes#learn(FeatureMatrixFile, int)} reads the mapping.
+     *
+     * @return The dataset with the class index set to 0.
+     */
+    public Instances toInstances() {
+        Instances data = new Instances(header(), numRows);
+        for (int row = 0; row < numRows; row++) {
+            data.add(instance(row));
+        }
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private IntBuffer mapInts(long offset, int count) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * count).asIntBuffer();
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer, int count) {
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    private static byte[][] encode(List<String> strings) {
+        byte[][] encoded = new byte[strings.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static long encodedSize(byte[][] encoded) {
+        long size = 0;
+        for (byte[] bytes : encoded) {
+            size += 4 + bytes.length;
+        }
+        return size;
+    }
+
+    private static void writeStrings(DataOutputStream out, byte[][] encoded) throws IOException {
+        for (byte[] bytes : encoded) {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
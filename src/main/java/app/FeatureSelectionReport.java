@@ -0,0 +1,181 @@
+package app;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shows how the {@link FeatureSelector} budget trades dimensionality against cost and accuracy.
+ * <p>
+ * For every K (0 keeps all terms within the DF bounds) it reports the number of features, the time
+ * to train the classifier on the full matrix, the mean latency of scoring one document, and the
+ * 10-fold cross-validated accuracy. The features, train time and latency are those of the terms
+ * selected on all documents, as the pipeline would deploy them. Cross-validation instead selects the
+ * terms again on the training folds of every split, so the held-out documents' labels never decide
+ * which terms are kept.
+ * <p>
+ * Usage: {@code FeatureSelectionReport [input.bowm] [K values, e.g. 100,1000,10000,0] [classifier]
+ * [minDf] [chi2|ig]}
+ */
+public class FeatureSelectionReport {
+
+    public static void main(String[] args) throws Exception {
+        String inputFilePath = args.length > 0 ? args[0] : "BagOfWords_Feature_Matrix.bowm";
+        String[] budgets = (args.length > 1 ? args[1] : "100,1000,10000,0").split(",");
+        String classifierName = args.length > 2 ? args[2] : "multinomial";
+        int minDf = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        FeatureSelector.Score score = args.length > 4 && args[4].equalsIgnoreCase("ig")
+                ? FeatureSelector.Score.INFORMATION_GAIN : FeatureSelector.Score.CHI_SQUARE;
+
+        SparseMatrix matrix;
+        List<String> vocabulary;
+        List<String> labels;
+        try (FeatureMatrixFile file = FeatureMatrixFile.open(Paths.get(inputFilePath))) {
+            matrix = file.toSparseMatrix();
+            vocabulary = file.vocabulary();
+            labels = file.labels();
+        }
+        System.out.printf("Input: %d documents x %d terms, %d non-zeros%n", matrix.numRows(), matrix.numColumns(),
+                matrix.nonZeros());
+
+        // Warm up the JIT so the first row is not charged for compilation
+        e_model.newClassifier(classifierName).buildClassifier(FeatureMatrixFile.toInstances(matrix, vocabulary, labels));
+
+        System.out.println("K\tfeatures\tnon-zeros\ttrain ms\tus/prediction\tCV accuracy");
+        Instances all = FeatureMatrixFile.toInstances(matrix, vocabulary, labels);
+        report("none", matrix, vocabulary, labels, classifierName, all, e_model.newClassifier(classifierName));
+        for (String budget : budgets) {
+            int topK = Integer.parseInt(budget.trim());
+            int[] kept = new FeatureSelector(minDf, 1.0, topK, score).select(matrix, labels);
+            report(topK == 0 ? "df>=" + minDf : String.valueOf(topK), FeatureSelector.project(matrix, kept),
+                    FeatureSelector.project(vocabulary, kept), labels, classifierName, all,
+                    new SelectingClassifier(e_model.newClassifier(classifierName), minDf, topK, score));
+        }
+    }
+
+    /**
+     * @param cvData     The unreduced dataset that is cross-validated.
+     * @param cvTemplate The classifier cross-validated on it, selecting its own terms if the report does.
+     */
+    private static void report(String name, SparseMatrix matrix, List<String> terms, List<String> labels,
+                               String classifierName, Instances cvData, Classifier cvTemplate) throws Exception {
+        Instances data = FeatureMatrixFile.toInstances(matrix, terms, labels);
+        Classifier template = e_model.newClassifier(classifierName);
+
+        long start = System.nanoTime();
+        Classifier model = AbstractClassifier.makeCopy(template);
+        model.buildClassifier(data);
+        double trainMillis = (System.nanoTime() - start) / 1e6;
+
+        // Score every document twice, timing only the second pass
+        double checksum = 0;
+        for (Instance instance : data) {
+            checksum += model.distributionForInstance(instance)[0];
+        }
+        start = System.nanoTime();
+        for (Instance instance : data) {
+            checksum += model.distributionForInstance(instance)[0];
+        }
+        double microsPerPrediction = (System.nanoTime() - start) / 1e3 / data.numInstances();
+
+        CrossValidator.Result result = new CrossValidator(10, Runtime.getRuntime().availableProcessors(), 1)
+                .run(cvData, cvTemplate);
+        System.out.printf("%s\t%d\t%d\t%.0f\t%.1f\t%.2f%%%s%n", name, matrix.numColumns(), matrix.nonZeros(),
+                trainMillis, microsPerPrediction, CrossValidator.Result.accuracy(result.aggregateMatrix()) * 100,
+                Double.isNaN(checksum) ? "\t(NaN scores)" : "");
+    }
+
+    /**
+     * Runs the {@link FeatureSelector} on the data it is trained on and trains the wrapped classifier on
+     * the kept terms; instances to score are reduced to the same terms.
+     */
+    private static class SelectingClassifier extends AbstractClassifier {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Classifier classifier;
+        private final int minDf;
+        private final int topK;
+        private final FeatureSelector.Score score;
+        private int[] newAttribute;
+        private Instances header;
+
+        SelectingClassifier(Classifier classifier, int minDf, int topK, FeatureSelector.Score score) {
+            this.classifier = classifier;
+            this.minDf = minDf;
+            this.topK = topK;
+            this.score = score;
+        }
+
+        @Override
+        public void buildClassifier(Instances data) throws Exception {
+            // Back to counts and labels, as the selector takes them
+            SparseMatrix.Builder builder = new SparseMatrix.Builder(data.numAttributes() - 1);
+            List<String> labels = new ArrayList<>(data.numInstances());
+            for (Instance instance : data) {
+                int[] rowColumns = new int[instance.numValues()];
+                int[] rowValues = new int[instance.numValues()];
+                int length = 0;
+                for (int i = 0; i < instance.numValues(); i++) {
+                    if (instance.index(i) != data.classIndex()) {
+                        rowColumns[length] = instance.index(i) - 1;
+                        rowValues[length++] = (int) instance.valueSparse(i);
+                    }
+                }
+                builder.addRow(rowColumns, rowValues, length);
+                labels.add(instance.stringValue(data.classIndex()));
+            }
+            int[] kept = new FeatureSelector(minDf, 1.0, topK, score).select(builder.build(), labels);
+
+            newAttribute = new int[data.numAttributes()];
+            Arrays.fill(newAttribute, -1);
+            newAttribute[0] = 0;
+            List<String> terms = new ArrayList<>(kept.length);
+            for (int i = 0; i < kept.length; i++) {
+                newAttribute[kept[i] + 1] = i + 1;
+                terms.add(data.attribute(kept[i] + 1).name());
+            }
+            // Same class values in the same order, so distributions line up with the unreduced data
+            List<String> classValues = new ArrayList<>(data.numClasses());
+            for (int c = 0; c < data.numClasses(); c++) {
+                classValues.add(data.classAttribute().value(c));
+            }
+            header = FeatureMatrixFile.createHeader(classValues, terms);
+
+            Instances reduced = new Instances(header, data.numInstances());
+            for (Instance instance : data) {
+                reduced.add(project(instance));
+            }
+            classifier.buildClassifier(reduced);
+        }
+
+        @Override
+        public double[] distributionForInstance(Instance instance) throws Exception {
+            return classifier.distributionForInstance(project(instance));
+        }
+
+        private Instance project(Instance instance) {
+            int[] indices = new int[instance.numValues()];
+            double[] values = new double[instance.numValues()];
+            int length = 0;
+            for (int i = 0; i < instance.numValues(); i++) {
+                int attribute = newAttribute[instance.index(i)];
+                if (attribute >= 0) {
+                    indices[length] = attribute;
+                    values[length++] = instance.valueSparse(i);
+                }
+            }
+            Instance reduced = new SparseInstance(instance.weight(), Arrays.copyOf(values, length),
+                    Arrays.copyOf(indices, length), header.numAttributes());
+            reduced.setDataset(header);
+            return reduced;
+        }
+    }
+}
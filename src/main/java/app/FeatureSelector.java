@@ -0,0 +1,256 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Feature selection stage between {@code d_boWords} and {@code e_model}.
+ * <p>
+ * One pass over the sparse counts collects every term's document frequency overall and per class.
+ * From these the class association of each term is scored with chi-square (the largest one-vs-rest
+ * statistic over the classes) or with information gain. Terms outside the min-DF/max-DF bounds are
+ * dropped, then the top-K terms by score are kept. The reduced matrix keeps the original column
+ * order.
+ * <p>
+ * Usage: {@code FeatureSelector [input.bowm] [--output=path] [--min-df=2] [--max-df=1.0]
+ * [--top-k=n] [--score=chi2|ig]}. The reduced matrix defaults to
+ * BagOfWords_Feature_Matrix_Selected.bowm and its terms are also written to Vocabulary_Selected.csv.
+ */
+public class FeatureSelector {
+
+    /**
+     * Class association measure used to rank terms.
+     */
+    public enum Score {
+        /** Largest one-vs-rest chi-square statistic over the classes. */
+        CHI_SQUARE,
+        /** Reduction in class entropy from knowing whether the term occurs. */
+        INFORMATION_GAIN
+    }
+
+    private final int minDf;
+    private final double maxDf;
+    private final int topK;
+    private final Score score;
+
+    /**
+     * @param minDf Minimum number of documents a term must occur in.
+     * @param maxDf Maximum fraction of documents a term may occur in.
+     * @param topK  Number of best-scoring terms to keep, or 0 to keep all within the bounds.
+     * @param score The class association measure.
+     */
+    public FeatureSelector(int minDf, double maxDf, int topK, Score score) {
+        this.minDf = minDf;
+        this.maxDf = maxDf;
+        this.topK = topK;
+        this.score = score;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String inputFilePath = "BagOfWords_Feature_Matrix.bowm";
+        String outputFilePath = "BagOfWords_Feature_Matrix_Selected.bowm";
+        int minDf = 2;
+        double maxDf = 1.0;
+        int topK = 0;
+        Score score = Score.CHI_SQUARE;
+        for (String arg : args) {
+            if (arg.startsWith("--output=")) {
+                outputFilePath = arg.substring("--output=".length());
+            } else if (arg.startsWith("--min-df=")) {
+                minDf = Integer.parseInt(arg.substring("--min-df=".length()));
+            } else if (arg.startsWith("--max-df=")) {
+                maxDf = Double.parseDouble(arg.substring("--max-df=".length()));
+            } else if (arg.startsWith("--top-k=")) {
+                topK = Integer.parseInt(arg.substring("--top-k=".length()));
+            } else if (arg.startsWith("--score=")) {
+                score = arg.substring("--score=".length()).equalsIgnoreCase("ig") ? Score.INFORMATION_GAIN : Score.CHI_SQUARE;
+            } else {
+                inputFilePath = arg;
+            }
+        }
+
+        SparseMatrix matrix;
+        List<String> vocabulary;
+        List<String> labels;
+        try (FeatureMatrixFile file = FeatureMatrixFile.open(Paths.get(inputFilePath))) {
+            matrix = file.toSparseMatrix();
+            vocabulary = file.vocabulary();
+            labels = file.labels();
+        }
+
+        if (FeatureHasher.fromVocabulary(vocabulary) != null) {
+            // A subset of the buckets would no longer identify the hasher at inference time
+            System.err.println("Feature selection needs a vocabulary matrix, not hashed features");
+            return;
+        }
+
+        long start = System.nanoTime();
+        FeatureSelector selector = new FeatureSelector(minDf, maxDf, topK, score);
+        int[] kept = selector.select(matrix, labels);
+        SparseMatrix reduced = project(matrix, kept);
+        List<String> reducedVocabulary = project(vocabulary, kept);
+        System.out.printf("Selected %d of %d terms (%d -> %d non-zeros) in %d ms%n", kept.length,
+                matrix.numColumns(), matrix.nonZeros(), reduced.nonZeros(), (System.nanoTime() - start) / 1_000_000);
+
+        Path outputPath = Paths.get(outputFilePath);
+        FeatureMatrixFile.write(outputPath, reduced, reducedVocabulary, labels);
+        d_boWords.saveVocabularyToCSV(reducedVocabulary, "Vocabulary_Selected.csv");
+        System.out.println("Reduced feature matrix saved to " + outputPath);
+    }
+
+    /**
+     * Chooses the columns to keep.
+     *
+     * @param matrix The BoW count matrix.
+     * @param labels Label of every row.
+     * @return The kept columns in ascending order.
+     */
+    public int[] select(SparseMatrix matrix, List<String> labels) {
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("select");
+        int numColumns = matrix.numColumns();
+        int numRows = matrix.numRows();
+        List<String> classValues = new ArrayList<>(new LinkedHashSet<>(labels));
+        int[] classOfRow = new int[numRows];
+        int[] classDocuments = new int[classValues.size()];
+        for (int row = 0; row < numRows; row++) {
+            classOfRow[row] = classValues.indexOf(labels.get(row));
+            classDocuments[classOfRow[row]]++;
+        }
+
+        // One pass over the non-zeros: document frequency of every term, overall and per class
+        int[] documentFrequency = new int[numColumns];
+        int[][] classFrequency = new int[classValues.size()][numColumns];
+        for (int row = 0; row < numRows; row++) {
+            int[] frequencies = classFrequency[classOfRow[row]];
+            for (int k = matrix.rowStart(row); k < matrix.rowEnd(row); k++) {
+                documentFrequency[matrix.column(k)]++;
+                frequencies[matrix.column(k)]++;
+            }
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        double[] scores = new double[numColumns];
+        for (int column = 0; column < numColumns; column++) {
+            int df = documentFrequency[column];
+            if (df >= minDf && df <= maxDf * numRows) {
+                scores[column] = score == Score.CHI_SQUARE
+                        ? chiSquare(column, df, classFrequency, classDocuments, numRows)
+                        : informationGain(column, df, classFrequency, classDocuments, numRows);
+                candidates.add(column);
+            }
+        }
+
+        if (topK > 0 && candidates.size() > topK) {
+            candidates.sort((a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a]) : Integer.compare(a, b));
+            candidates = candidates.subList(0, topK);
+        }
+        int[] kept = new int[candidates.size()];
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = candidates.get(i);
+        }
+        Arrays.sort(kept);
+        stage.stop(numRows);
+        PipelineMetrics.set("selected_features", kept.length);
+        return kept;
+    }
+
+    /**
+     * Keeps only the given columns of a matrix, renumbering them in order.
+     *
+     * @param matrix      The BoW count matrix.
+     * @param keptColumns Columns to keep, in ascending order.
+     * @return The reduced matrix with {@code keptColumns.length} columns.
+     */
+    public static SparseMatrix project(SparseMatrix matrix, int[] keptColumns) {
+        int[] newColumn = new int[matrix.numColumns()];
+        Arrays.fill(newColumn, -1);
+        for (int i = 0; i < keptColumns.length; i++) {
+            newColumn[keptColumns[i]] = i;
+        }
+
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(keptColumns.length);
+        int[] rowColumns = new int[16];
+        int[] rowValues = new int[16];
+        for (int row = 0; row < matrix.numRows(); row++) {
+            int length = 0;
+            for (int k = matrix.rowStart(row); k < matrix.rowEnd(row); k++) {
+                int column = newColumn[matrix.column(k)];
+                if (column >= 0) {
+                    if (length == rowColumns.length) {
+                        rowColumns = Arrays.copyOf(rowColumns, length * 2);
+                        rowValues = Arrays.copyOf(rowValues, length * 2);
+                    }
+                    rowColumns[length] = column;
+                    rowValues[length++] = matrix.value(k);
+                }
+            }
+            builder.addRow(rowColumns, rowValues, length);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The terms of the kept columns, in column order.
+     */
+    public static List<String> project(List<String> vocabulary, int[] keptColumns) {
+        List<String> terms = new ArrayList<>(keptColumns.length);
+        for (int column : keptColumns) {
+            terms.add(vocabulary.get(column));
+        }
+        return terms;
+    }
+
+    /**
+     * Largest one-vs-rest chi-square statistic of the term's 2x2 occurrence/class table.
+     */
+    private static double chiSquare(int column, int df, int[][] classFrequency, int[] classDocuments, int numRows) {
+        double best = 0;
+        for (int c = 0; c < classDocuments.length; c++) {
+            double a = classFrequency[c][column];       // in class, with term
+            double b = df - a;                          // other classes, with term
+            double cc = classDocuments[c] - a;          // in class, without term
+            double d = numRows - classDocuments[c] - b; // other classes, without term
+            double denominator = (a + cc) * (b + d) * (a + b) * (cc + d);
+            if (denominator > 0) {
+                double difference = a * d - b * cc;
+                best = Math.max(best, numRows * difference * difference / denominator);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Class entropy minus the expected class entropy once the term's presence is known.
+     */
+    private static double informationGain(int column, int df, int[][] classFrequency, int[] classDocuments, int numRows) {
+        double[] with = new double[classDocuments.length];
+        double[] without = new double[classDocuments.length];
+        double[] all = new double[classDocuments.length];
+        for (int c = 0; c < classDocuments.length; c++) {
+            with[c] = classFrequency[c][column];
+            without[c] = classDocuments[c] - with[c];
+            all[c] = classDocuments[c];
+        }
+        return entropy(all, numRows) - (double) df / numRows * entropy(with, df)
+                - (double) (numRows - df) / numRows * entropy(without, numRows - df);
+    }
+
+    private static double entropy(double[] counts, double total) {
+        if (total <= 0) {
+            return 0;
+        }
+        double entropy = 0;
+        for (double count : counts) {
+            if (count > 0) {
+                double p = count / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy;
+    }
+}
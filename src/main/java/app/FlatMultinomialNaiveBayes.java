@@ -0,0 +1,258 @@
+package app;
+
+import weka.classifiers.AbstractClassifier;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Multinomial Naive Bayes scoring engine over flat primitive arrays.
+ * <p>
+ * Training makes one pass over the sparse count rows and then stores, per class, the Laplace-smoothed
+ * log-probability of every term in a {@code float[]} indexed by term id, next to the log prior. Scoring
+ * a document is one sparse dot product per class between its counts and that array (see
+ * {@link SparseDot}, which uses the Vector API when available), so the cost depends only on the
+ * number of distinct terms in the document.
+ * <p>
+ * Unlike {@link MultinomialNaiveBayes} the model cannot be updated after training; use
+ * {@link MultinomialNaiveBayes#compile()} to freeze an incrementally trained model for scoring. As a
+ * Weka classifier it expects the class at attribute 0 followed by one count attribute per term, and
+ * negative counts from signed feature hashing count by their magnitude, as in
+ * {@link MultinomialNaiveBayes}.
+ */
+public class FlatMultinomialNaiveBayes extends AbstractClassifier {
+
+    private static final long serialVersionUID = 1L;
+
+    // Laplace smoothing constant added to every count
+    private static final double ALPHA = 1.0;
+
+    private List<String> classValues = new ArrayList<>();
+    private double[] logPriors = new double[0];
+    private float[][] logLikelihoods = new float[0][];
+
+    public FlatMultinomialNaiveBayes() {
+    }
+
+    /**
+     * Freezes accumulated counts into log-probabilities.
+     *
+     * @param classValues     The class values.
+     * @param classDocuments  Number (or weight) of training documents per class.
+     * @param termCounts      Per class, the count of every term id; rows may be shorter than numTerms.
+     * @param classTermTotals Per class, the sum of its term counts.
+     * @param numTerms        Vocabulary size.
+     */
+    FlatMultinomialNaiveBayes(List<String> classValues, double[] classDocuments, double[][] termCounts,
+                              double[] classTermTotals, int numTerms) {
+        setCounts(classValues, classDocuments, termCounts, classTermTotals, numTerms);
+    }
+
+    /**
+     * Trains directly from a feature matrix in one pass over its non-zeros.
+     *
+     * @param matrix The BoW count matrix.
+     * @param labels Label of every row.
+     * @return The trained model; its attribute layout is {@link FeatureMatrixFile#createHeader}.
+     */
+    public static FlatMultinomialNaiveBayes train(SparseMatrix matrix, List<String> labels) {
+        List<String> classValues = new ArrayList<>(new LinkedHashSet<>(labels));
+        int numTerms = matrix.numColumns();
+        double[] classDocuments = new double[classValues.size()];
+        double[][] termCounts = new double[classValues.size()][numTerms];
+        double[] classTermTotals = new double[classValues.size()];
+        for (int row = 0; row < matrix.numRows(); row++) {
+            int c = classValues.indexOf(labels.get(row));
+            double[] counts = termCounts[c];
+            for (int k = matrix.rowStart(row); k < matrix.rowEnd(row); k++) {
+                int count = Math.abs(matrix.value(k));
+                counts[matrix.column(k)] += count;
+                classTermTotals[c] += count;
+            }
+            classDocuments[c]++;
+        }
+        return new FlatMultinomialNaiveBayes(classValues, classDocuments, termCounts, classTermTotals, numTerms);
+    }
+
+    /**
+     * Trains on a dataset whose class attribute is at index 0 and whose other attributes are term counts.
+     *
+     * @param data The training data.
+     */
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        if (data.classIndex() != 0 || !data.classAttribute().isNominal()) {
+            throw new IllegalArgumentException("Expected a nominal class attribute at index 0");
+        }
+        int numClasses = data.numClasses();
+        int numTerms = data.numAttributes() - 1;
+        List<String> values = new ArrayList<>(numClasses);
+        for (int c = 0; c < numClasses; c++) {
+            values.add(data.classAttribute().value(c));
+        }
+
+        double[] classDocuments = new double[numClasses];
+        double[][] termCounts = new double[numClasses][numTerms];
+        double[] classTermTotals = new double[numClasses];
+        for (Instance instance : data) {
+            if (instance.classIsMissing()) {
+                continue;
+            }
+            int c = (int) instance.classValue();
+            double weight = instance.weight();
+            for (int i = 0; i < instance.numValues(); i++) {
+                int attributeIndex = instance.index(i);
+                double count = Math.abs(instance.valueSparse(i));
+                if (attributeIndex != 0 && count != 0 && !Double.isNaN(count)) {
+                    termCounts[c][attributeIndex - 1] += count * weight;
+                    classTermTotals[c] += count * weight;
+                }
+            }
+            classDocuments[c] += weight;
+        }
+        setCounts(values, classDocuments, termCounts, classTermTotals, numTerms);
+    }
+
+    /**
+     * Returns the class probability distribution of an instance laid out like the training data.
+     *
+     * @param instance The instance to classify.
+     * @return Probability of each class value.
+     */
+    @Override
+    public double[] distributionForInstance(Instance instance) {
+        int[] termIds = new int[instance.numValues()];
+        float[] counts = new float[instance.numValues()];
+        return distributionForCounts(termIds, counts, toCounts(instance, termIds, counts));
+    }
+
+    /**
+     * Returns the class probability distributions of a batch, reusing one pair of row buffers sized
+     * for its longest instance.
+     *
+     * @param batch Instances laid out like the training data.
+     * @return Probability of each class value, per instance.
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances batch) {
+        int maxValues = 0;
+        for (Instance instance : batch) {
+            maxValues = Math.max(maxValues, instance.numValues());
+        }
+        int[] termIds = new int[maxValues];
+        float[] counts = new float[maxValues];
+        double[][] distributions = new double[batch.numInstances()][];
+        for (int i = 0; i < distributions.length; i++) {
+            distributions[i] = distributionForCounts(termIds, counts, toCounts(batch.instance(i), termIds, counts));
+        }
+        return distributions;
+    }
+
+    @Override
+    public boolean implementsMoreEfficientBatchPrediction() {
+        return true;
+    }
+
+    /**
+     * Returns the class probability distribution of a sparse count row.
+     *
+     * @param termIds Distinct term ids of the document.
+     * @param counts  Count of every term id, non-negative.
+     * @param length  Number of entries to take from the arrays.
+     * @return Probability of each class value.
+     */
+    public double[] distributionForCounts(int[] termIds, float[] counts, int length) {
+        double[] scores = new double[logPriors.length];
+        for (int c = 0; c < scores.length; c++) {
+            scores[c] = logPriors[c] + SparseDot.dot(logLikelihoods[c], termIds, counts, length);
+        }
+        return normalize(scores);
+    }
+
+    public List<String> classValues() {
+        return classValues;
+    }
+
+    /**
+     * Copies the term counts of an instance into the buffers, which must hold its number of values.
+     *
+     * @return Number of entries written.
+     */
+    private static int toCounts(Instance instance, int[] termIds, float[] counts) {
+        int length = 0;
+        for (int i = 0; i < instance.numValues(); i++) {
+            int attributeIndex = instance.index(i);
+            double count = instance.valueSparse(i);
+            if (attributeIndex != 0 && count != 0 && !Double.isNaN(count)) {
+                termIds[length] = attributeIndex - 1;
+                counts[length++] = (float) Math.abs(count);
+            }
+        }
+        return length;
+    }
+
+    public int numTerms() {
+        return logLikelihoods.length == 0 ? 0 : logLikelihoods[0].length;
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capabilities.Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capabilities.Capability.MISSING_VALUES);
+        result.enable(Capabilities.Capability.NOMINAL_CLASS);
+        result.enable(Capabilities.Capability.MISSING_CLASS_VALUES);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Flat multinomial Naive Bayes: " + classValues.size() + " classes, " + numTerms() + " terms"
+                + (SparseDot.VECTORIZED ? " (Vector API scoring)" : "");
+    }
+
+    private void setCounts(List<String> values, double[] classDocuments, double[][] termCounts,
+                           double[] classTermTotals, int numTerms) {
+        int numClasses = values.size();
+        double totalDocuments = 0;
+        for (double documents : classDocuments) {
+            totalDocuments += documents;
+        }
+
+        classValues = new ArrayList<>(values);
+        logPriors = new double[numClasses];
+        logLikelihoods = new float[numClasses][numTerms];
+        for (int c = 0; c < numClasses; c++) {
+            logPriors[c] = Math.log((classDocuments[c] + ALPHA) / (totalDocuments + ALPHA * numClasses));
+            double logDenominator = Math.log(classTermTotals[c] + ALPHA * numTerms);
+            double[] counts = termCounts[c];
+            float[] logLikelihood = logLikelihoods[c];
+            for (int t = 0; t < numTerms; t++) {
+                double count = t < counts.length ? counts[t] : 0;
+                logLikelihood[t] = (float) (Math.log(count + ALPHA) - logDenominator);
+            }
+        }
+    }
+
+    private static double[] normalize(double[] logScores) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double score : logScores) {
+            max = Math.max(max, score);
+        }
+        double sum = 0;
+        double[] distribution = new double[logScores.length];
+        for (int c = 0; c < logScores.length; c++) {
+            distribution[c] = Math.exp(logScores[c] - max);
+            sum += distribution[c];
+        }
+        for (int c = 0; c < distribution.length; c++) {
+            distribution[c] /= sum;
+        }
+        return distribution;
+    }
+}
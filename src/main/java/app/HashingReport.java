@@ -0,0 +1,72 @@
+package app;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares feature hashing with the exact vocabulary on the preprocessed news.
+ * <p>
+ * For the exact vocabulary and for every bucket count, signed and unsigned, it reports vectorizing
+ * throughput, the number of feature columns and non-zeros, and the 10-fold cross-validated accuracy
+ * of the chosen classifier trained on those features.
+ * <p>
+ * Unsigned hashing, the default of the stages, is listed first. The signed rows show what the sign
+ * costs the naive Bayes classifiers: they count a bucket by the magnitude of its summed value, so
+ * tokens of opposite sign that collide cancel out instead of adding up, and buckets that sum to 0
+ * disappear from the non-zeros altogether.
+ * <p>
+ * Usage: {@code HashingReport [preprocessed.csv] [bucketCounts, e.g. 1024,16384,65536] [classifier]}
+ */
+public class HashingReport {
+
+    public static void main(String[] args) throws Exception {
+        String inputFilePath = args.length > 0 ? args[0] : "PreprocessedNews.csv";
+        String[] bucketCounts = (args.length > 1 ? args[1] : "1024,16384,65536").split(",");
+        String classifierName = args.length > 2 ? args[2] : "multinomial";
+
+        List<String[]> records = d_boWords.readCSV(inputFilePath);
+        List<String> labels = new ArrayList<>(records.size());
+        for (String[] record : records) {
+            labels.add(record[record.length - 2]);
+        }
+
+        System.out.println("features\tdocs/sec\tcolumns\tnon-zeros\tCV accuracy\tCV seconds");
+
+        // Exact vocabulary, built the way d_boWords does
+        long start = System.nanoTime();
+        Vocabulary vocabulary = new Vocabulary();
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(0);
+        for (String[] record : records) {
+            builder.addDocument(d_boWords.toTermIds(record, vocabulary));
+        }
+        SparseMatrix exact = builder.build();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report("vocabulary", exact, vocabulary.terms(), labels, records.size() / seconds, classifierName);
+
+        for (String bucketCount : bucketCounts) {
+            for (boolean signed : new boolean[]{false, true}) {
+                FeatureHasher hasher = new FeatureHasher(Integer.parseInt(bucketCount.trim()), signed);
+                start = System.nanoTime();
+                SparseMatrix hashed = d_boWords.hashRecords(records, hasher);
+                seconds = (System.nanoTime() - start) / 1e9;
+                report((signed ? "signed " : "unsigned ") + hasher.numBuckets(), hashed, hasher.bucketNames(), labels,
+                        records.size() / seconds, classifierName);
+            }
+        }
+    }
+
+    private static void report(String name, SparseMatrix matrix, List<String> terms, List<String> labels,
+                               double docsPerSecond, String classifierName) throws Exception {
+        Instances data = FeatureMatrixFile.toInstances(matrix, terms, labels);
+        Classifier template = e_model.newClassifier(classifierName);
+        long start = System.nanoTime();
+        CrossValidator.Result result = new CrossValidator(10, Runtime.getRuntime().availableProcessors(), 1)
+                .run(data, template);
+        double cvSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s\t%.0f\t%d\t%d\t%.2f%%\t%.1f%n", name, docsPerSecond, matrix.numColumns(),
+                matrix.nonZeros(), CrossValidator.Result.accuracy(result.aggregateMatrix()) * 100, cvSeconds);
+    }
+}
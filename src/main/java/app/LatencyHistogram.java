@@ -0,0 +1,100 @@
+package app;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets.
+ * <p>
+ * Bucket {@code i} counts latencies of at most {@code 2^i} microseconds; the last bucket also takes
+ * everything slower. Recording is one {@link LongAdder} increment per call, so the histogram can sit
+ * on hot paths shared by worker threads. Quantiles are estimated as the upper bound of the bucket
+ * they fall in, which overstates them by at most a factor of two.
+ */
+public class LatencyHistogram {
+
+    // 1 us .. 2^25 us (about 33 s)
+    private static final int BUCKETS = 26;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos Latency of one operation in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(1, (nanos + 999) / 1000);
+        int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+        counts[Math.min(bucket, BUCKETS - 1)].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public double sumSeconds() {
+        return totalNanos.sum() / 1e9;
+    }
+
+    public double maxSeconds() {
+        return maxNanos.get() / 1e9;
+    }
+
+    /**
+     * @return Number of buckets, each with the upper bound {@link #upperBoundSeconds(int)}.
+     */
+    public int numBuckets() {
+        return BUCKETS;
+    }
+
+    public static double upperBoundSeconds(int bucket) {
+        return (1L << bucket) / 1e6;
+    }
+
+    /**
+     * @return Number of recorded latencies in the given bucket alone.
+     */
+    public long bucketCount(int bucket) {
+        return counts[bucket].sum();
+    }
+
+    /**
+     * Estimates a quantile from the bucket counts.
+     *
+     * @param q The quantile, between 0 and 1.
+     * @return The upper bound of the bucket holding the quantile in seconds, or 0 if nothing was recorded.
+     */
+    public double quantileSeconds(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundSeconds(i), maxSeconds());
+            }
+        }
+        return maxSeconds();
+    }
+}
@@ -0,0 +1,153 @@
+package app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded, thread-safe token → lemma cache with least-recently-used eviction.
+ * <p>
+ * Entries are spread over independently locked stripes, each an access-ordered {@link LinkedHashMap}
+ * holding at most {@code capacity / STRIPES} entries, so concurrent workers rarely contend.
+ * Lemmas are computed outside the lock; two workers missing on the same token may both compute it.
+ */
+public class LemmaCache {
+
+    private static final int STRIPES = 16;
+
+    private final List<Map<String, String>> stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache holding up to {@code capacity} tokens.
+     *
+     * @param capacity Maximum number of cached tokens.
+     */
+    public LemmaCache(int capacity) {
+        int stripeCapacity = Math.max(1, capacity / STRIPES);
+        stripes = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    if (size() > stripeCapacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the cached lemma of a token, computing and caching it on a miss.
+     *
+     * @param token      The token to lemmatize.
+     * @param lemmatizer Computes the lemma of a token that is not cached.
+     * @return The lemma of the token.
+     */
+    public String get(String token, Function<String, String> lemmatizer) {
+        Map<String, String> stripe = stripeFor(token);
+        String lemma;
+        synchronized (stripe) {
+            lemma = stripe.get(token);
+        }
+        if (lemma != null) {
+            hits.increment();
+            return lemma;
+        }
+
+        misses.increment();
+        lemma = lemmatizer.apply(token);
+        synchronized (stripe) {
+            stripe.put(token, lemma);
+        }
+        return lemma;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return Fraction of lookups answered from the cache, or 0 if there were none.
+     */
+    public double hitRate() {
+        long hitCount = hits();
+        long total = hitCount + misses();
+        return total == 0 ? 0 : hitCount / (double) total;
+    }
+
+    /**
+     * @return Number of tokens currently cached.
+     */
+    public int size() {
+        int size = 0;
+        for (Map<String, String> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all cached entries; the hit, miss and eviction counts are kept.
+     */
+    public void clear() {
+        for (Map<String, String> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the cached entries as a tab-separated token/lemma dictionary, the format read by
+     * {@link FastLemmatizer#loadDictionary(String)}.
+     *
+     * @param filePath The path where the dictionary should be saved.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveDictionary(String filePath) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            for (Map<String, String> stripe : stripes) {
+                synchronized (stripe) {
+                    for (Map.Entry<String, String> entry : stripe.entrySet()) {
+                        writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d hits=%d misses=%d evictions=%d hitRate=%.2f%%",
+                size(), hits(), misses(), evictions(), hitRate() * 100);
+    }
+
+    private Map<String, String> stripeFor(String token) {
+        int hash = token.hashCode();
+        return stripes.get((hash ^ (hash >>> 16)) & (STRIPES - 1));
+    }
+}
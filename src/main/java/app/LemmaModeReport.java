@@ -0,0 +1,157 @@
+package app;
+
+import weka.classifiers.Evaluation;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.StringToWordVector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the {@link c_preprocessing1.LemmaMode}s side by side on a sample of the combined news.
+ * <p>
+ * For each mode it reports preprocessing throughput, how many tokens agree with the full pipeline,
+ * and the 10-fold cross-validated accuracy of the {@code e_model} classifier ({@link NaiveBayes} over
+ * bag-of-words counts of title and text) trained on that mode's output.
+ * <p>
+ * Every mode first preprocesses {@value #WARM_UP_RECORDS} records untimed, which loads the CoreNLP
+ * models and compiles the hot paths, so no mode's throughput includes the model load. The lemma
+ * cache is emptied before each timed run, so CACHED is measured from a cold cache rather than on
+ * lemmas its warm-up already computed.
+ * <p>
+ * Usage: {@code LemmaModeReport [input.csv] [stopwords.txt] [sampleSize] [lemmaDictionary.tsv]}
+ */
+public class LemmaModeReport {
+
+    private static final int WARM_UP_RECORDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        String inputFilePath = args.length > 0 ? args[0] : "CombinedNews.csv";
+        String stopWordsFilePath = args.length > 1 ? args[1] : "stopwords.txt";
+        int sampleSize = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        c_preprocessing1.loadStopWordsFromFile(stopWordsFilePath);
+        if (args.length > 3) {
+            c_preprocessing1.loadLemmaDictionaryFromFile(args[3]);
+        }
+        List<String[]> records = c_preprocessing1.readCSV(inputFilePath);
+        List<String[]> sample = sampleAcrossLabels(records, sampleSize);
+
+        List<String[]> warmUp = sample.subList(0, Math.min(WARM_UP_RECORDS, sample.size()));
+        for (c_preprocessing1.LemmaMode mode : c_preprocessing1.LemmaMode.values()) {
+            new c_preprocessing1(1, c_preprocessing1.DEFAULT_CHUNK_SIZE, mode).preprocessData(warmUp);
+        }
+
+        List<String[]> pipelineOutput = null;
+        System.out.println("mode\trecords/sec\ttoken agreement\tCV accuracy");
+        for (c_preprocessing1.LemmaMode mode : c_preprocessing1.LemmaMode.values()) {
+            c_preprocessing1 preprocessor = new c_preprocessing1(1, c_preprocessing1.DEFAULT_CHUNK_SIZE, mode);
+            c_preprocessing1.getLemmaCache().clear();
+
+            long start = System.nanoTime();
+            List<String[]> output = preprocessor.preprocessData(sample);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            if (pipelineOutput == null) {
+                pipelineOutput = output;
+            }
+            System.out.printf("%s\t%.1f\t%.2f%%\t%.2f%%%n", mode, output.size() / seconds,
+                    tokenAgreement(pipelineOutput, output) * 100, crossValidatedAccuracy(output));
+        }
+        System.out.println("Lemma cache: " + c_preprocessing1.getLemmaCache());
+    }
+
+    /**
+     * Takes every n-th record so the sample covers both the fake and the true half of the input.
+     */
+    private static List<String[]> sampleAcrossLabels(List<String[]> records, int sampleSize) {
+        int step = Math.max(1, records.size() / Math.max(1, sampleSize));
+        List<String[]> sample = new ArrayList<>();
+        for (int i = 0; i < records.size() && sample.size() < sampleSize; i += step) {
+            sample.add(records.get(i));
+        }
+        return sample;
+    }
+
+    /**
+     * Fraction of the pipeline's title and text tokens that the other mode also produced for the same
+     * field, comparing the fields as multisets of tokens: a token dropped or split by one mode only
+     * costs that token, not every token after it.
+     */
+    private static double tokenAgreement(List<String[]> expected, List<String[]> actual) {
+        long agreeing = 0;
+        long total = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            for (int column = 0; column < 2; column++) {
+                Map<String, Integer> actualCounts = tokenCounts(actual.get(i)[column]);
+                for (String token : expected.get(i)[column].split(" ")) {
+                    if (token.isEmpty()) {
+                        continue;
+                    }
+                    total++;
+                    Integer count = actualCounts.get(token);
+                    if (count != null && count > 0) {
+                        agreeing++;
+                        actualCounts.put(token, count - 1);
+                    }
+                }
+            }
+        }
+        return total == 0 ? 1 : agreeing / (double) total;
+    }
+
+    private static Map<String, Integer> tokenCounts(String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String token : text.split(" ")) {
+            if (!token.isEmpty()) {
+                counts.merge(token, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Cross-validates a Naive Bayes classifier over word counts of the preprocessed records.
+     *
+     * @param records Preprocessed records (title, text, subject, date, label, ...).
+     * @return Percentage of correctly classified records.
+     */
+    private static double crossValidatedAccuracy(List<String[]> records) throws Exception {
+        List<String> labels = new ArrayList<>();
+        for (String[] record : records) {
+            if (!labels.contains(record[4])) {
+                labels.add(record[4]);
+            }
+        }
+
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("content", (List<String>) null));
+        attributes.add(new Attribute("class", labels));
+        Instances raw = new Instances("news", attributes, records.size());
+        raw.setClassIndex(1);
+        for (String[] record : records) {
+            double[] values = new double[2];
+            values[0] = raw.attribute(0).addStringValue(record[0] + " " + record[1]);
+            values[1] = labels.indexOf(record[4]);
+            raw.add(new DenseInstance(1.0, values));
+        }
+
+        StringToWordVector vectorizer = new StringToWordVector();
+        vectorizer.setOutputWordCounts(true);
+        vectorizer.setWordsToKeep(Integer.MAX_VALUE);
+        vectorizer.setLowerCaseTokens(false);
+        vectorizer.setInputFormat(raw);
+        Instances data = Filter.useFilter(raw, vectorizer);
+
+        Evaluation evaluation = new Evaluation(data);
+        evaluation.crossValidateModel(new NaiveBayes(), data, 10, new Random(1));
+        return evaluation.pctCorrect();
+    }
+}
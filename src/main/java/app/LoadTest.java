@@ -0,0 +1,108 @@
+package app;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load-test harness for {@link ClassifierServer}.
+ * <p>
+ * Sends {@code requests} classify requests from {@code concurrency} virtual threads, each thread
+ * issuing its requests back to back, and reports throughput and latency percentiles. Only requests
+ * answered with 200 count towards throughput and latency; other responses and failed requests are
+ * reported on their own, so a server that quickly turns requests away does not look fast. Request
+ * bodies are taken round-robin from the lines of the given text file, or generated if none is given.
+ * <p>
+ * Usage: {@code LoadTest [url] [concurrency] [requests] [texts.txt]}
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080/classify";
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        List<String> texts = args.length > 3 ? Files.readAllLines(Paths.get(args[3])) : syntheticTexts(100);
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI uri = URI.create(url);
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        // Warm up the connection pool and the server's JIT before measuring
+        for (int i = 0; i < Math.min(200, requests); i++) {
+            send(client, uri, texts.get(i % texts.size()));
+        }
+
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < concurrency; t++) {
+                clients.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < requests) {
+                        long sent = System.nanoTime();
+                        try {
+                            if (send(client, uri, texts.get(i % texts.size())) == 200) {
+                                latencies[succeeded.getAndIncrement()] = System.nanoTime() - sent;
+                            } else {
+                                rejected.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] ok = Arrays.copyOf(latencies, succeeded.get());
+        Arrays.sort(ok);
+        System.out.printf("requests=%d concurrency=%d succeeded=%d non-200=%d errors=%d%n",
+                requests, concurrency, ok.length, rejected.get(), errors.get());
+        System.out.printf("throughput: %.1f successful requests/sec%n", ok.length / seconds);
+        if (ok.length > 0) {
+            System.out.printf("latency of successful requests p50: %.2f ms, p99: %.2f ms, max: %.2f ms%n",
+                    percentile(ok, 0.50), percentile(ok, 0.99), ok[ok.length - 1] / 1e6);
+        }
+    }
+
+    private static int send(HttpClient client, URI uri, String text) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(text)).build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * @return The latency at the given quantile of the sorted nanosecond latencies, in milliseconds.
+     */
+    private static double percentile(long[] sortedLatencies, double quantile) {
+        int index = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+
+    private static List<String> syntheticTexts(int count) {
+        String[] words = {"president", "election", "report", "officials", "said", "breaking", "shocking",
+                "video", "government", "senate", "secret", "truth", "week", "statement", "media", "claims"};
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 60; w++) {
+                text.append(words[(i * 31 + w * 7) % words.length]).append(' ');
+            }
+            texts.add(text.toString());
+        }
+        return texts;
+    }
+}
@@ -1,17 +1,69 @@
 package app;
 
-//TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
-// click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
+import java.util.Arrays;
+
+/**
+ * Entry point dispatching to the pipeline runner or to a single stage.
+ * <p>
+ * Usage: {@code Main [command] [options]} where command is one of
+ * <ul>
+ *   <li>{@code pipeline} (default): runs all stages in memory, see {@link PipelineRunner};</li>
+ *   <li>{@code combine}, {@code preprocess}, {@code bow}, {@code select}: runs one file-based stage, see
+ *   {@link b_combineCSV}, {@link c_preprocessing1}, {@link d_boWords} and {@link FeatureSelector};</li>
+ *   <li>{@code train}, {@code classify}, {@code update}: model commands, see {@link e_model};</li>
+ *   <li>{@code shard}: sharded multi-process training, see {@link ShardedTrainer};</li>
+ *   <li>{@code serve}: starts the HTTP inference server, see {@link ClassifierServer}.</li>
+ * </ul>
+ * The remaining arguments are passed to the selected stage.
+ * <p>
+ * With {@code -Dapp.metrics.file=path} every command writes periodic metrics snapshots, see
+ * {@link PipelineMetrics}.
+ * <p>
+ * Short {@code classify --text=...} runs start faster from the jar built by the cds profile with the
+ * class data sharing archive it dumps: {@code java -XX:SharedArchiveFile=target/classify.jsa -jar
+ * target/MinorMaven-1.0-SNAPSHOT.jar classify --text=...}.
+ */
 public class Main {
-    public static void main(String[] args) {
-        //TIP Press <shortcut actionId="ShowIntentionActions"/> with your caret at the highlighted text
-        // to see how IntelliJ IDEA suggests fixing it.
-        System.out.printf("Hello and welcome!");
 
-        for (int i = 1; i <= 5; i++) {
-            //TIP Press <shortcut actionId="Debug"/> to start debugging your code. We have set one <icon src="AllIcons.Debugger.Db_set_breakpoint"/> breakpoint
-            // for you, but you can always add more by pressing <shortcut actionId="ToggleLineBreakpoint"/>.
-            System.out.println("i = " + i);
+    public static void main(String[] args) throws Exception {
+        PipelineMetrics.startReporter();
+
+        // Arguments that look like options or labeled inputs belong to the default pipeline command
+        boolean hasCommand = args.length > 0 && !args[0].contains("=") && !args[0].startsWith("--");
+        String command = hasCommand ? args[0] : "pipeline";
+        String[] stageArgs = hasCommand ? Arrays.copyOfRange(args, 1, args.length) : args;
+
+        switch (command) {
+            case "pipeline":
+                PipelineRunner.main(stageArgs);
+                break;
+            case "combine":
+                b_combineCSV.main(stageArgs);
+                break;
+            case "preprocess":
+                c_preprocessing1.main(stageArgs);
+                break;
+            case "bow":
+                d_boWords.main(stageArgs);
+                break;
+            case "select":
+                FeatureSelector.main(stageArgs);
+                break;
+            case "train":
+            case "classify":
+            case "update":
+                e_model.main(args);
+                break;
+            case "shard":
+                ShardedTrainer.main(stageArgs);
+                break;
+            case "serve":
+                ClassifierServer.main(stageArgs);
+                break;
+            default:
+                System.err.println("Unknown command: " + command);
+                System.err.println("Commands: pipeline, combine, preprocess, bow, select, train, classify, update, shard, serve");
+                System.exit(1);
         }
     }
-}
\ No newline at end of file
+}
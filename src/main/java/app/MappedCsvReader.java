@@ -0,0 +1,403 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming RFC 4180 CSV reader over a memory-mapped UTF-8 file, used by every stage that reads CSV.
+ * <p>
+ * Records end at LF or CRLF and fields are separated by commas. A field starting with a double quote
+ * runs to its closing quote and may contain commas, line breaks and doubled quotes, as written by
+ * opencsv's {@code CSVWriter}. Unlike opencsv's default parser, backslashes are ordinary characters
+ * and line breaks inside quoted fields are kept as they are, where opencsv turns CRLF into LF.
+ * Characters between a closing quote and the next separator are kept, and a blank line is a record
+ * with one empty field, as in opencsv.
+ * <p>
+ * The file is scanned as bytes: commas, quotes and line breaks are ASCII and never occur inside a
+ * UTF-8 multi-byte sequence, so nothing is decoded while parsing. {@link Row#field(int)} returns
+ * ASCII fields as character views of the mapped bytes, inside the quotes for quoted fields, unless
+ * quotes have to be removed from within the field; other fields are only decoded when asked for. The
+ * file is mapped in windows of up to 1 GiB, which bounds the size of a single record.
+ * <p>
+ * {@link #readNext()} and the iterator refill the same {@link Row} for every record; copy what must
+ * outlive it with {@link Row#get(int)} or {@link Row#toArray()}. Instances are not thread-safe.
+ */
+public class MappedCsvReader implements Closeable, Iterable<MappedCsvReader.Row> {
+
+    private static final int WINDOW_SIZE = 1 << 30;
+
+    // Field flags
+    private static final byte NON_ASCII = 1;
+    private static final byte QUOTED = 2; // Bounds include the quotes
+    private static final byte ESCAPED = 4; // Quoted, with doubled quotes or characters after the closing quote
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final Row row = new Row();
+    private ByteBuffer window;
+    private long windowStart;
+    private int position;
+
+    /**
+     * Opens and maps the file.
+     *
+     * @param path The CSV file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public MappedCsvReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        map(0);
+        // Skip a UTF-8 byte order mark
+        if (window.limit() >= 3 && window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB
+                && window.get(2) == (byte) 0xBF) {
+            position = 3;
+        }
+    }
+
+    /**
+     * Reads every record of a file.
+     *
+     * @param filePath The CSV file.
+     * @return The records, each field as a string.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public static List<String[]> readAll(String filePath) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (MappedCsvReader reader = new MappedCsvReader(Paths.get(filePath))) {
+            Row row;
+            while ((row = reader.readNext()) != null) {
+                records.add(row.toArray());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Parses the next record.
+     *
+     * @return The record, valid until the next call, or null at the end of the file.
+     * @throws IOException If a quoted field is not closed or a record does not fit in a window.
+     */
+    public Row readNext() throws IOException {
+        if (windowStart + position >= fileSize) {
+            return null;
+        }
+        while (true) {
+            int end = parseRecord(position);
+            if (end >= 0) {
+                position = end;
+                return row;
+            }
+            // The record runs past the window; map the next window from the start of the record
+            if (position == 0) {
+                throw new IOException("Record at byte " + windowStart + " is larger than " + WINDOW_SIZE + " bytes");
+            }
+            map(windowStart + position);
+        }
+    }
+
+    /**
+     * @return Byte offset in the file of the next record {@link #readNext()} will parse.
+     */
+    public long position() {
+        return windowStart + position;
+    }
+
+    /**
+     * Continues reading at a byte offset, which must be the start of a record, such as a value of
+     * {@link #position()}.
+     *
+     * @param offset Byte offset in the file.
+     * @throws IOException If the file cannot be mapped there.
+     */
+    public void seek(long offset) throws IOException {
+        if (offset < 0 || offset > fileSize) {
+            throw new IllegalArgumentException("Offset " + offset + " outside a file of " + fileSize + " bytes");
+        }
+        map(offset);
+    }
+
+    /**
+     * Iterates over the remaining records; the returned row is refilled by every call to
+     * {@code next()}. Read errors are thrown as {@link UncheckedIOException}.
+     */
+    @Override
+    public Iterator<Row> iterator() {
+        return new Iterator<>() {
+
+            private Row next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = readNext();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Row next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Row current = next;
+                next = null;
+                return current;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void map(long start) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+        windowStart = start;
+        position = 0;
+    }
+
+    /**
+     * Parses the record starting at {@code pos} into {@link #row}.
+     *
+     * @return The position after the record's line break, or -1 if the window ends inside the record
+     * and the file goes on.
+     */
+    private int parseRecord(int pos) throws IOException {
+        ByteBuffer bytes = window;
+        int limit = bytes.limit();
+        boolean lastWindow = windowStart + limit == fileSize;
+        row.clear();
+        while (true) {
+            int start = pos;
+            byte flags = 0;
+            if (pos < limit && bytes.get(pos) == '"') {
+                flags = QUOTED;
+                pos++;
+                // Up to the closing quote; doubled quotes are part of the field
+                while (true) {
+                    if (pos >= limit) {
+                        if (lastWindow) {
+                            throw new IOException("Unterminated quoted field starting at byte " + (windowStart + start));
+                        }
+                        return -1;
+                    }
+                    byte b = bytes.get(pos++);
+                    if (b == '"') {
+                        if (pos < limit && bytes.get(pos) == '"') {
+                            flags |= ESCAPED;
+                            pos++;
+                        } else if (pos < limit || lastWindow) {
+                            break;
+                        } else {
+                            return -1;
+                        }
+                    } else if (b < 0) {
+                        flags |= NON_ASCII;
+                    }
+                }
+            }
+            // Unquoted field, or characters after the closing quote
+            int afterQuotes = pos;
+            while (pos < limit) {
+                byte b = bytes.get(pos);
+                if (b == ',' || b == '\n' || b == '\r') {
+                    break;
+                }
+                if (b < 0) {
+                    flags |= NON_ASCII;
+                }
+                pos++;
+            }
+            if (pos >= limit && !lastWindow) {
+                return -1;
+            }
+            if ((flags & QUOTED) != 0 && pos != afterQuotes) {
+                flags |= ESCAPED;
+            }
+            row.add(start, pos, flags);
+
+            if (pos >= limit) {
+                return pos;
+            }
+            byte separator = bytes.get(pos++);
+            if (separator == '\n') {
+                return pos;
+            }
+            if (separator == '\r') {
+                if (pos < limit) {
+                    return bytes.get(pos) == '\n' ? pos + 1 : pos;
+                }
+                return lastWindow ? pos : -1;
+            }
+        }
+    }
+
+    /**
+     * The fields of the current record.
+     */
+    public final class Row {
+
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private byte[] flags = new byte[8];
+        private int size;
+
+        private Row() {
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns a field as characters. ASCII fields without quotes to remove from within them are
+         * views of the mapped file, which stay readable after the reader moves on; other fields are
+         * decoded.
+         *
+         * @param i Field index.
+         * @return The field's characters.
+         */
+        public CharSequence field(int i) {
+            checkIndex(i);
+            if ((flags[i] & (NON_ASCII | ESCAPED)) == 0) {
+                int quotes = (flags[i] & QUOTED) != 0 ? 1 : 0;
+                return new AsciiSlice(window, starts[i] + quotes, ends[i] - starts[i] - 2 * quotes);
+            }
+            return get(i);
+        }
+
+        /**
+         * @param i Field index.
+         * @return The field as a string, with quotes removed.
+         */
+        public String get(int i) {
+            checkIndex(i);
+            if ((flags[i] & ESCAPED) != 0) {
+                byte[] raw = new byte[ends[i] - starts[i]];
+                window.get(starts[i], raw);
+                return unquote(raw);
+            }
+            int quotes = (flags[i] & QUOTED) != 0 ? 1 : 0;
+            byte[] raw = new byte[ends[i] - starts[i] - 2 * quotes];
+            window.get(starts[i] + quotes, raw);
+            return new String(raw, (flags[i] & NON_ASCII) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * @return All fields as strings.
+         */
+        public String[] toArray() {
+            String[] fields = new String[size];
+            for (int i = 0; i < size; i++) {
+                fields[i] = get(i);
+            }
+            return fields;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void add(int start, int end, byte fieldFlags) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                flags = Arrays.copyOf(flags, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            flags[size++] = fieldFlags;
+        }
+
+        private void checkIndex(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Field " + i + " of a record with " + size + " fields");
+            }
+        }
+
+        /**
+         * Removes the quotes of a quoted field: doubled quotes inside the quotes become one, and
+         * characters after the closing quote are kept.
+         */
+        private String unquote(byte[] raw) {
+            byte[] out = new byte[raw.length];
+            int length = 0;
+            boolean inQuotes = false;
+            for (int i = 0; i < raw.length; i++) {
+                if (raw[i] != '"') {
+                    out[length++] = raw[i];
+                } else if (inQuotes && i + 1 < raw.length && raw[i + 1] == '"') {
+                    out[length++] = '"';
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            }
+            return new String(out, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Characters of an ASCII field, read straight from the mapped bytes.
+     */
+    private static final class AsciiSlice implements CharSequence {
+
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        AsciiSlice(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) bytes.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("[" + start + ", " + end + ") of " + length);
+            }
+            return new AsciiSlice(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] raw = new byte[length];
+            bytes.get(offset, raw);
+            return new String(raw, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Near-duplicate index of articles using MinHash signatures and LSH banding.
+ * <p>
+ * An article's text is cleaned by a {@link TextCleaner} (URLs, case, non-letters and stop words
+ * removed, but not lemmatized, so a query never needs the CoreNLP pipeline) and split into
+ * overlapping word {@value #SHINGLE_SIZE}-shingles. Titles are left out: inference requests carry
+ * only the text, and reposts often get a new headline anyway. The signature keeps, for each of
+ * {@value #NUM_HASHES} random hash functions, the minimum hash over the shingles; the fraction of
+ * equal positions in two signatures estimates the Jaccard similarity of their shingle sets. The
+ * signature is cut into {@value #BANDS} bands of {@value #ROWS} rows, and articles sharing any band
+ * become candidates, which are then compared on the full signature. With these parameters a pair
+ * with similarity 0.8 becomes a candidate with probability about 0.94, a pair at 0.5 about 0.06.
+ * <p>
+ * The index serves two purposes: dropping near-duplicates from the training data before the
+ * Bag-of-Words stage ({@link #addIfNew}), so reposted stories neither inflate training nor leak
+ * between cross-validation folds, and answering queries for known articles with their label at
+ * inference time ({@link #lookup}). Lookups may run concurrently with each other but not with adds.
+ */
+public class MinHashIndex implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    /** Default minimum estimated Jaccard similarity for two articles to count as near-duplicates. */
+    public static final double DEFAULT_THRESHOLD = 0.8;
+
+    static final int SHINGLE_SIZE = 3;
+    static final int BANDS = 16;
+    static final int ROWS = 8;
+    static final int NUM_HASHES = BANDS * ROWS;
+
+    private final Set<String> stopWords;
+    private final double threshold;
+
+    // Derived from the fixed seed and the signatures, and rebuilt on load: serializing the bucket maps
+    // made loading the index the slowest step of a short classify run
+    private transient long[] multipliers;
+    private transient long[] increments;
+    private transient List<int[]> signatures;
+    private transient List<String> labels;
+    private transient List<Map<Long, int[]>> bandBuckets;
+
+    private transient TextCleaner cleaner;
+    private transient LongAdder hits;
+    private transient LongAdder misses;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param stopWords Stop words removed before shingling, normally those of {@link c_preprocessing1}.
+     * @param threshold Minimum estimated Jaccard similarity of a match.
+     */
+    public MinHashIndex(Set<String> stopWords, double threshold) {
+        this.stopWords = new HashSet<>(stopWords);
+        this.threshold = threshold;
+        initTransientState();
+    }
+
+    /**
+     * Loads an index saved by {@link #save(Path)}.
+     *
+     * @param path The index file.
+     * @return The index.
+     * @throws IOException If the file cannot be read or is not an index.
+     */
+    public static MinHashIndex load(Path path) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return (MinHashIndex) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(path + " is not a near-duplicate index", e);
+        }
+    }
+
+    /**
+     * Loads the verdict cache served next to a model and registers its hit counts with
+     * {@link PipelineMetrics}.
+     *
+     * @param indexPath The index file, or null for {@code <model>.lsh}, which is written by
+     *                  {@code PipelineRunner --dedupe} and skipped if absent.
+     * @param modelPath The model artifact the cache is served with.
+     * @return The index, or null if no index was given and none sits next to the model.
+     * @throws IOException If the index cannot be read.
+     */
+    static MinHashIndex loadVerdictCache(String indexPath, String modelPath) throws IOException {
+        Path path = Paths.get(indexPath != null ? indexPath : modelPath + ".lsh");
+        if (indexPath == null && !Files.exists(path)) {
+            return null;
+        }
+        MinHashIndex index = load(path);
+        PipelineMetrics.cache("verdict", index::hits, index::misses);
+        System.out.println("Verdict cache loaded from " + path + " (" + index.size() + " articles)");
+        return index;
+    }
+
+    /**
+     * @param path Where the index is written.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path path) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * Computes the signature of an article.
+     *
+     * @param text The raw text.
+     * @return The MinHash signature, or null if no tokens remain after cleaning.
+     */
+    public int[] signature(String text) {
+        StringBuilder cleaned = new StringBuilder(text.length());
+        cleaner.clean(text, cleaned);
+        return signatureOfCleaned(cleaned);
+    }
+
+    /**
+     * Adds an article unless it is a near-duplicate of one already indexed.
+     *
+     * @param text  The raw text.
+     * @param label The article's label.
+     * @return The indexed article it duplicates, or null if it was added (or has no tokens).
+     */
+    public Match addIfNew(String text, String label) {
+        int[] signature = signature(text);
+        if (signature == null) {
+            return null;
+        }
+        Match match = find(signature);
+        if (match == null) {
+            add(signature, label);
+        }
+        return match;
+    }
+
+    /**
+     * Finds the most similar indexed article for a query, counting a hit or a miss.
+     *
+     * @param text The raw query text.
+     * @return The best match at or above the threshold, or null.
+     */
+    public Match lookup(String text) {
+        int[] signature = signature(text);
+        Match match = signature == null ? null : find(signature);
+        if (match != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return match;
+    }
+
+    /**
+     * @return Number of indexed articles.
+     */
+    public int size() {
+        return signatures.size();
+    }
+
+    public double threshold() {
+        return threshold;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    private int[] signatureOfCleaned(CharSequence cleaned) {
+        int[] tokenHashes = tokenHashes(cleaned);
+        if (tokenHashes.length == 0) {
+            return null;
+        }
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        // Texts shorter than a shingle become a single shingle of all their tokens
+        int shingles = Math.max(1, tokenHashes.length - SHINGLE_SIZE + 1);
+        for (int s = 0; s < shingles; s++) {
+            long shingle = 0;
+            for (int t = s; t < Math.min(s + SHINGLE_SIZE, tokenHashes.length); t++) {
+                shingle = shingle * 0x9E3779B97F4A7C15L + tokenHashes[t];
+            }
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int value = (int) ((multipliers[i] * shingle + increments[i]) >>> 32);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static int[] tokenHashes(CharSequence cleaned) {
+        int[] hashes = new int[16];
+        int count = 0;
+        int start = 0;
+        int length = cleaned.length();
+        while (start < length) {
+            int end = start;
+            while (end < length && cleaned.charAt(end) != ' ') {
+                end++;
+            }
+            if (end > start) {
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                }
+                hashes[count++] = FeatureHasher.murmur3(CharBuffer.wrap(cleaned, start, end));
+            }
+            start = end + 1;
+        }
+        return Arrays.copyOf(hashes, count);
+    }
+
+    private Match find(int[] signature) {
+        Set<Integer> seen = new HashSet<>();
+        Match best = null;
+        for (int band = 0; band < BANDS; band++) {
+            int[] candidates = bandBuckets.get(band).get(bandKey(signature, band));
+            if (candidates == null) {
+                continue;
+            }
+            // The last slot holds the number of ids stored in the bucket
+            for (int i = 0; i < candidates[candidates.length - 1]; i++) {
+                int id = candidates[i];
+                if (seen.add(id)) {
+                    double similarity = similarity(signature, signatures.get(id));
+                    if (similarity >= threshold && (best == null || similarity > best.similarity)) {
+                        best = new Match(id, labels.get(id), similarity);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void add(int[] signature, String label) {
+        int id = signatures.size();
+        signatures.add(signature);
+        labels.add(label);
+        for (int band = 0; band < BANDS; band++) {
+            bandBuckets.get(band).merge(bandKey(signature, band), new int[]{id, 1}, (bucket, single) -> {
+                int count = bucket[bucket.length - 1];
+                if (count == bucket.length - 1) {
+                    bucket = Arrays.copyOf(bucket, bucket.length * 2);
+                }
+                bucket[count] = id;
+                bucket[bucket.length - 1] = count + 1;
+                return bucket;
+            });
+        }
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[i];
+        }
+        return key;
+    }
+
+    private static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return equal / (double) NUM_HASHES;
+    }
+
+    private void initTransientState() {
+        // Fixed seed: signatures must be comparable across runs and with saved indexes
+        SplittableRandom random = new SplittableRandom(0x5EED_0F_4E575L);
+        multipliers = new long[NUM_HASHES];
+        increments = new long[NUM_HASHES];
+        for (int i = 0; i < NUM_HASHES; i++) {
+            multipliers[i] = random.nextLong() | 1;
+            increments[i] = random.nextLong();
+        }
+        signatures = new ArrayList<>();
+        labels = new ArrayList<>();
+        bandBuckets = new ArrayList<>(BANDS);
+        for (int band = 0; band < BANDS; band++) {
+            bandBuckets.add(new HashMap<>());
+        }
+        cleaner = new TextCleaner(stopWords);
+        hits = new LongAdder();
+        misses = new LongAdder();
+    }
+
+    /**
+     * Writes the stop words and threshold, then all signatures as one flat array and the labels.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        int[] flat = new int[signatures.size() * NUM_HASHES];
+        for (int id = 0; id < signatures.size(); id++) {
+            System.arraycopy(signatures.get(id), 0, flat, id * NUM_HASHES, NUM_HASHES);
+        }
+        out.writeObject(flat);
+        out.writeObject(labels.toArray(new String[0]));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initTransientState();
+        int[] flat = (int[]) in.readObject();
+        String[] savedLabels = (String[]) in.readObject();
+        for (int id = 0; id < savedLabels.length; id++) {
+            add(Arrays.copyOfRange(flat, id * NUM_HASHES, (id + 1) * NUM_HASHES), savedLabels[id]);
+        }
+    }
+
+    /**
+     * An indexed article similar to a query.
+     */
+    public static class Match {
+
+        private final int id;
+        private final String label;
+        private final double similarity;
+
+        Match(int id, String label, double similarity) {
+            this.id = id;
+            this.label = label;
+            this.similarity = similarity;
+        }
+
+        /**
+         * @return Position of the article among those added to the index.
+         */
+        public int id() {
+            return id;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        /**
+         * @return Estimated Jaccard similarity of the shingle sets.
+         */
+        public double similarity() {
+            return similarity;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package app;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Versioned snapshot of a trained classifier together with its attribute header and vocabulary.
+ * <p>
+ * Layout: magic "FNMA", format version, SHA-256 fingerprint of the vocabulary, the vocabulary terms
+ * in attribute order, then the Java-serialized classifier and empty Weka header. The vocabulary is
+ * stored ahead of the serialized objects so a mismatching artifact is rejected before the costly
+ * deserialization.
+ */
+public class ModelArtifact {
+
+    private static final int MAGIC = 0x464E4D41; // "FNMA"
+    public static final int VERSION = 1;
+
+    private final Classifier classifier;
+    private final Instances header;
+    private final List<String> vocabulary;
+    private final byte[] vocabularyFingerprint;
+
+    /**
+     * Snapshots a classifier trained on {@code data}.
+     *
+     * @param classifier The trained classifier.
+     * @param data       The training data (or its header); only the attribute header is kept.
+     */
+    public ModelArtifact(Classifier classifier, Instances data) {
+        this(classifier, new Instances(data, 0), vocabularyOf(data));
+    }
+
+    private ModelArtifact(Classifier classifier, Instances header, List<String> vocabulary) {
+        this.classifier = classifier;
+        this.header = header;
+        this.vocabulary = vocabulary;
+        this.vocabularyFingerprint = fingerprint(vocabulary);
+    }
+
+    public Classifier classifier() {
+        return classifier;
+    }
+
+    /**
+     * @return Empty dataset describing the attributes, with the class index set.
+     */
+    public Instances header() {
+        return header;
+    }
+
+    /**
+     * @return Terms in attribute order, excluding the class attribute.
+     */
+    public List<String> vocabulary() {
+        return vocabulary;
+    }
+
+    public String fingerprintHex() {
+        return HexFormat.of().formatHex(vocabularyFingerprint);
+    }
+
+    /**
+     * Writes the artifact to a file.
+     *
+     * @param path The destination file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(vocabularyFingerprint.length);
+            out.write(vocabularyFingerprint);
+            out.writeInt(vocabulary.size());
+            for (String term : vocabulary) {
+                byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            ObjectOutputStream objects = new ObjectOutputStream(out);
+            objects.writeObject(classifier);
+            objects.writeObject(header);
+            objects.flush();
+        }
+    }
+
+    /**
+     * Reads an artifact, checking that its stored vocabulary is intact.
+     *
+     * @param path The artifact file.
+     * @return The loaded artifact.
+     * @throws IOException If the file cannot be read, has another version, or is inconsistent.
+     */
+    public static ModelArtifact load(Path path) throws IOException {
+        return load(path, null);
+    }
+
+    /**
+     * Reads an artifact and rejects it unless it was built with the expected vocabulary.
+     *
+     * @param path               The artifact file.
+     * @param expectedVocabulary Terms in attribute order, or null to only check the artifact itself.
+     * @return The loaded artifact.
+     * @throws IOException If the file cannot be read, has another version, or does not match.
+     */
+    public static ModelArtifact load(Path path, List<String> expectedVocabulary) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a model artifact: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported model artifact version " + version + ", expected " + VERSION);
+            }
+            byte[] storedFingerprint = new byte[in.readInt()];
+            in.readFully(storedFingerprint);
+            int size = in.readInt();
+            List<String> vocabulary = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                vocabulary.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            if (!Arrays.equals(storedFingerprint, fingerprint(vocabulary))) {
+                throw new IOException("Model artifact vocabulary is corrupt: fingerprint mismatch");
+            }
+            if (expectedVocabulary != null && !Arrays.equals(storedFingerprint, fingerprint(expectedVocabulary))) {
+                throw new IOException("Model artifact was built with a different vocabulary ("
+                        + size + " terms) than the expected one (" + expectedVocabulary.size() + " terms)");
+            }
+
+            ObjectInputStream objects = new ObjectInputStream(in);
+            Classifier classifier = (Classifier) objects.readObject();
+            Instances header = (Instances) objects.readObject();
+            if (!vocabulary.equals(vocabularyOf(header))) {
+                throw new IOException("Model artifact header does not match its vocabulary");
+            }
+            return new ModelArtifact(classifier, header, vocabulary);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Model artifact contains an incompatible classifier: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Computes the SHA-256 fingerprint of a vocabulary in term order.
+     *
+     * @param vocabulary Terms in attribute order.
+     * @return The digest bytes.
+     */
+    public static byte[] fingerprint(List<String> vocabulary) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String term : vocabulary) {
+                digest.update(term.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static List<String> vocabularyOf(Instances data) {
+        List<String> terms = new ArrayList<>(data.numAttributes() - 1);
+        for (int i = 0; i < data.numAttributes(); i++) {
+            if (i != data.classIndex()) {
+                terms.add(data.attribute(i).name());
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,447 @@
+package app;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Count-based multinomial Naive Bayes over term counts, trainable incrementally.
+ * <p>
+ * The model keeps per-class document counts and per-class term counts indexed by the ids of its own
+ * {@link Vocabulary}. Both the vocabulary and the set of class values grow in place as new documents
+ * are learned, so new labeled articles can be folded in without revisiting earlier ones.
+ * Probabilities use Laplace smoothing. Negative values, as produced by signed feature hashing
+ * ({@link FeatureHasher}), count by their magnitude; tokens of opposite sign that share a bucket have
+ * cancelled before the model sees them, which is why the stages hash unsigned by default.
+ * <p>
+ * As a Weka classifier it expects the layout produced by {@link #header()}: the nominal class at
+ * attribute 0 followed by one numeric count attribute per term, in term-id order.
+ * <p>
+ * Since the model is nothing but counts, models trained on separate partitions of the data can be
+ * combined with {@link #merge(MultinomialNaiveBayes)}; {@link #writeStatistics} and
+ * {@link #readStatistics} move the counts between processes (see {@link ShardedTrainer}).
+ */
+public class MultinomialNaiveBayes extends AbstractClassifier implements UpdateableClassifier {
+
+    private static final long serialVersionUID = 1L;
+
+    // Laplace smoothing constant added to every count
+    private static final double ALPHA = 1.0;
+
+    private Vocabulary vocabulary = new Vocabulary();
+    private List<String> classValues = new ArrayList<>();
+    private double[] classDocuments = new double[0];
+    private double[][] termCounts = new double[0][];
+    private double[] classTermTotals = new double[0];
+
+    public MultinomialNaiveBayes() {
+    }
+
+    /**
+     * Creates an empty model with the given class values and terms, in that order, so that its
+     * {@link #header()} matches a feature matrix with the same class values and vocabulary.
+     *
+     * @param classValues The class values.
+     * @param terms       Distinct terms in id order.
+     */
+    public MultinomialNaiveBayes(List<String> classValues, List<String> terms) {
+        vocabulary = new Vocabulary(terms);
+        for (String label : classValues) {
+            classIndex(label);
+        }
+    }
+
+    /**
+     * Trains from scratch on a dataset whose class attribute is at index 0 and whose other
+     * attributes are term counts named after their terms.
+     *
+     * @param data The training data.
+     */
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        if (data.classIndex() != 0 || !data.classAttribute().isNominal()) {
+            throw new IllegalArgumentException("Expected a nominal class attribute at index 0");
+        }
+        List<String> terms = new ArrayList<>(data.numAttributes() - 1);
+        for (int i = 1; i < data.numAttributes(); i++) {
+            terms.add(data.attribute(i).name());
+        }
+        List<String> labels = new ArrayList<>(data.numClasses());
+        for (int i = 0; i < data.numClasses(); i++) {
+            labels.add(data.classAttribute().value(i));
+        }
+
+        vocabulary = new Vocabulary(terms);
+        classValues = new ArrayList<>();
+        classDocuments = new double[0];
+        termCounts = new double[0][];
+        classTermTotals = new double[0];
+        for (String label : labels) {
+            classIndex(label);
+        }
+
+        for (Instance instance : data) {
+            updateClassifier(instance);
+        }
+    }
+
+    /**
+     * Adds one labeled instance laid out like {@link #header()} to the counts.
+     *
+     * @param instance The instance; it is ignored if its class is missing.
+     */
+    @Override
+    public void updateClassifier(Instance instance) {
+        if (instance.classIsMissing()) {
+            return;
+        }
+        int classIndex = (int) instance.classValue();
+        double weight = instance.weight();
+        for (int i = 0; i < instance.numValues(); i++) {
+            int attributeIndex = instance.index(i);
+            double count = Math.abs(instance.valueSparse(i));
+            if (attributeIndex != 0 && count != 0 && !Double.isNaN(count)) {
+                addCount(classIndex, attributeIndex - 1, count * weight);
+            }
+        }
+        classDocuments[classIndex] += weight;
+    }
+
+    /**
+     * Adds one labeled document, given as term ids of this model's vocabulary, to the counts.
+     * Unknown labels become new class values.
+     *
+     * @param label   The document's class value.
+     * @param termIds Term ids of the document's tokens, with repeats.
+     */
+    public void learn(String label, int[] termIds) {
+        int classIndex = classIndex(label);
+        for (int termId : termIds) {
+            addCount(classIndex, termId, 1);
+        }
+        classDocuments[classIndex]++;
+    }
+
+    /**
+     * Adds one labeled document, given as term ids with their counts, to the counts.
+     * Unknown labels become new class values.
+     *
+     * @param label   The document's class value.
+     * @param termIds Distinct term ids of the document.
+     * @param counts  Count of every term id; negative counts add their magnitude.
+     * @param length  Number of entries to take from the arrays.
+     */
+    public void learn(String label, int[] termIds, int[] counts, int length) {
+        int classIndex = classIndex(label);
+        for (int i = 0; i < length; i++) {
+            addCount(classIndex, termIds[i], Math.abs(counts[i]));
+        }
+        classDocuments[classIndex]++;
+    }
+
+    /**
+     * Adds one row of a memory-mapped feature matrix to the counts, reading them straight from the
+     * mapping. The model's vocabulary must be the matrix's, as with
+     * {@link #MultinomialNaiveBayes(List, List)}.
+     *
+     * @param matrix The feature matrix.
+     * @param row    The row to learn.
+     */
+    public void learn(FeatureMatrixFile matrix, int row) {
+        int classIndex = classIndex(matrix.label(row));
+        for (int k = matrix.rowStart(row); k < matrix.rowEnd(row); k++) {
+            addCount(classIndex, matrix.column(k), Math.abs(matrix.value(k)));
+        }
+        classDocuments[classIndex]++;
+    }
+
+    /**
+     * Adds the counts of a model trained on other documents to this one. Class values and terms this
+     * model lacks are appended in the other model's order, so merging the models of consecutive
+     * partitions in partition order yields the classes, vocabulary and counts of a model trained on
+     * all partitions at once. Counts are whole numbers, so their sums are exact in any order.
+     *
+     * @param other The model to fold in; it is not modified.
+     */
+    public void merge(MultinomialNaiveBayes other) {
+        int[] termIds = new int[other.vocabulary.size()];
+        for (int t = 0; t < termIds.length; t++) {
+            termIds[t] = vocabulary.add(other.vocabulary.term(t));
+        }
+        for (int c = 0; c < other.classValues.size(); c++) {
+            int classIndex = classIndex(other.classValues.get(c));
+            double[] counts = other.termCounts[c];
+            for (int t = 0; t < Math.min(counts.length, termIds.length); t++) {
+                if (counts[t] != 0) {
+                    addCount(classIndex, termIds[t], counts[t]);
+                }
+            }
+            classDocuments[classIndex] += other.classDocuments[c];
+        }
+    }
+
+    /**
+     * Writes the class values, vocabulary and non-zero counts in a compact binary form.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void writeStatistics(DataOutputStream out) throws IOException {
+        out.writeInt(classValues.size());
+        for (String classValue : classValues) {
+            out.writeUTF(classValue);
+        }
+        out.writeInt(vocabulary.size());
+        for (String term : vocabulary.terms()) {
+            out.writeUTF(term);
+        }
+        for (int c = 0; c < classValues.size(); c++) {
+            double[] counts = termCounts[c];
+            int limit = Math.min(counts.length, vocabulary.size());
+            int nonZeros = 0;
+            for (int t = 0; t < limit; t++) {
+                if (counts[t] != 0) {
+                    nonZeros++;
+                }
+            }
+            out.writeDouble(classDocuments[c]);
+            out.writeInt(nonZeros);
+            for (int t = 0; t < limit; t++) {
+                if (counts[t] != 0) {
+                    out.writeInt(t);
+                    out.writeDouble(counts[t]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads counts written by {@link #writeStatistics(DataOutputStream)}.
+     *
+     * @param in The stream to read from.
+     * @return The model holding the counts.
+     * @throws IOException If the stream cannot be read.
+     */
+    public static MultinomialNaiveBayes readStatistics(DataInputStream in) throws IOException {
+        MultinomialNaiveBayes model = new MultinomialNaiveBayes();
+        int numClasses = in.readInt();
+        List<String> labels = new ArrayList<>(numClasses);
+        for (int c = 0; c < numClasses; c++) {
+            labels.add(in.readUTF());
+        }
+        int numTerms = in.readInt();
+        List<String> terms = new ArrayList<>(numTerms);
+        for (int t = 0; t < numTerms; t++) {
+            terms.add(in.readUTF());
+        }
+        model.vocabulary = new Vocabulary(terms);
+        for (String label : labels) {
+            model.classIndex(label);
+        }
+        for (int c = 0; c < numClasses; c++) {
+            model.classDocuments[c] = in.readDouble();
+            int nonZeros = in.readInt();
+            for (int i = 0; i < nonZeros; i++) {
+                int termId = in.readInt();
+                model.addCount(c, termId, in.readDouble());
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Returns the class probability distribution of an instance laid out like {@link #header()}.
+     *
+     * @param instance The instance to classify.
+     * @return Probability of each class value.
+     */
+    @Override
+    public double[] distributionForInstance(Instance instance) {
+        return distributionForInstance(instance, logPriors());
+    }
+
+    /**
+     * Returns the class probability distributions of a batch, computing the class priors once.
+     *
+     * @param batch Instances laid out like {@link #header()}.
+     * @return Probability of each class value, per instance.
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances batch) {
+        double[] logPriors = logPriors();
+        double[][] distributions = new double[batch.numInstances()][];
+        for (int i = 0; i < distributions.length; i++) {
+            distributions[i] = distributionForInstance(batch.instance(i), logPriors.clone());
+        }
+        return distributions;
+    }
+
+    @Override
+    public boolean implementsMoreEfficientBatchPrediction() {
+        return true;
+    }
+
+    private double[] distributionForInstance(Instance instance, double[] logScores) {
+        for (int i = 0; i < instance.numValues(); i++) {
+            int attributeIndex = instance.index(i);
+            double count = Math.abs(instance.valueSparse(i));
+            if (attributeIndex != 0 && count != 0 && !Double.isNaN(count)) {
+                addTermScores(logScores, attributeIndex - 1, count);
+            }
+        }
+        return normalize(logScores);
+    }
+
+    /**
+     * Returns the class probability distribution of a row of a memory-mapped feature matrix whose
+     * vocabulary is this model's, without creating an {@link Instance}.
+     *
+     * @param matrix The feature matrix.
+     * @param row    The row to classify.
+     * @return Probability of each class value.
+     */
+    public double[] distributionForRow(FeatureMatrixFile matrix, int row) {
+        double[] logScores = logPriors();
+        for (int k = matrix.rowStart(row); k < matrix.rowEnd(row); k++) {
+            int count = Math.abs(matrix.value(k));
+            if (count != 0) {
+                addTermScores(logScores, matrix.column(k), count);
+            }
+        }
+        return normalize(logScores);
+    }
+
+    /**
+     * Returns the class probability distribution of a document given as term ids.
+     *
+     * @param termIds Term ids of the document's tokens, with repeats; negative ids are ignored.
+     * @return Probability of each class value.
+     */
+    public double[] distributionForTerms(int[] termIds) {
+        double[] logScores = logPriors();
+        for (int termId : termIds) {
+            if (termId >= 0) {
+                addTermScores(logScores, termId, 1);
+            }
+        }
+        return normalize(logScores);
+    }
+
+    /**
+     * @return The vocabulary whose ids index the term counts; extend it to learn new terms.
+     */
+    public Vocabulary vocabulary() {
+        return vocabulary;
+    }
+
+    public List<String> classValues() {
+        return classValues;
+    }
+
+    /**
+     * Builds the Weka header matching the current vocabulary and class values: the nominal "Label"
+     * class at index 0 followed by one numeric attribute per term.
+     *
+     * @return An empty dataset with the class index set.
+     */
+    public Instances header() {
+        return FeatureMatrixFile.createHeader(classValues, vocabulary.terms());
+    }
+
+    /**
+     * Freezes the current counts into a {@link FlatMultinomialNaiveBayes} for faster scoring.
+     * The snapshot has the same attribute layout and predictions as this model.
+     *
+     * @return The compiled model.
+     */
+    public FlatMultinomialNaiveBayes compile() {
+        return new FlatMultinomialNaiveBayes(classValues, classDocuments, termCounts, classTermTotals, vocabulary.size());
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capabilities.Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capabilities.Capability.MISSING_VALUES);
+        result.enable(Capabilities.Capability.NOMINAL_CLASS);
+        result.enable(Capabilities.Capability.MISSING_CLASS_VALUES);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Multinomial Naive Bayes: " + classValues.size() + " classes, " + vocabulary.size() + " terms";
+    }
+
+    private int classIndex(String label) {
+        int index = classValues.indexOf(label);
+        if (index >= 0) {
+            return index;
+        }
+        classValues.add(label);
+        int classes = classValues.size();
+        classDocuments = Arrays.copyOf(classDocuments, classes);
+        classTermTotals = Arrays.copyOf(classTermTotals, classes);
+        termCounts = Arrays.copyOf(termCounts, classes);
+        termCounts[classes - 1] = new double[Math.max(16, vocabulary.size())];
+        return classes - 1;
+    }
+
+    private void addCount(int classIndex, int termId, double count) {
+        double[] counts = termCounts[classIndex];
+        if (termId >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(termId + 1, counts.length * 2));
+            termCounts[classIndex] = counts;
+        }
+        counts[termId] += count;
+        classTermTotals[classIndex] += count;
+    }
+
+    private double[] logPriors() {
+        double totalDocuments = 0;
+        for (double documents : classDocuments) {
+            totalDocuments += documents;
+        }
+        double[] logScores = new double[classValues.size()];
+        for (int c = 0; c < logScores.length; c++) {
+            logScores[c] = Math.log((classDocuments[c] + ALPHA) / (totalDocuments + ALPHA * logScores.length));
+        }
+        return logScores;
+    }
+
+    private void addTermScores(double[] logScores, int termId, double count) {
+        double smoothedVocabulary = ALPHA * vocabulary.size();
+        for (int c = 0; c < logScores.length; c++) {
+            double[] counts = termCounts[c];
+            double termCount = termId < counts.length ? counts[termId] : 0;
+            logScores[c] += count * Math.log((termCount + ALPHA) / (classTermTotals[c] + smoothedVocabulary));
+        }
+    }
+
+    private static double[] normalize(double[] logScores) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double score : logScores) {
+            max = Math.max(max, score);
+        }
+        double sum = 0;
+        double[] distribution = new double[logScores.length];
+        for (int c = 0; c < logScores.length; c++) {
+            distribution[c] = Math.exp(logScores[c] - max);
+            sum += distribution[c];
+        }
+        for (int c = 0; c < distribution.length; c++) {
+            distribution[c] /= sum;
+        }
+        return distribution;
+    }
+}
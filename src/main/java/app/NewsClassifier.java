@@ -0,0 +1,331 @@
+package app;
+
+import weka.classifiers.Classifier;
+import weka.core.BatchPredictor;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Classifies raw text with a trained model, reusing one attribute header for every query.
+ * <p>
+ * Query tokens are mapped to attribute indices through a dictionary built once from the header,
+ * and each query becomes a {@link SparseInstance} holding only the tokens it contains. Building the
+ * query therefore costs time proportional to its length rather than to the vocabulary size; how long
+ * scoring takes depends on the classifier ({@link MultinomialNaiveBayes} visits only the stored
+ * values, Weka's NaiveBayes still visits every attribute).
+ * <p>
+ * Models trained on hashed features ({@link FeatureHasher}) are recognized from their header, and
+ * queries are then hashed into the same buckets instead of being looked up.
+ * <p>
+ * With a verdict cache ({@link MinHashIndex}), a text that is a near-duplicate of a known article
+ * takes that article's label without being scored.
+ * <p>
+ * Instances are safe for concurrent use as long as the underlying classifier's scoring is.
+ */
+public class NewsClassifier {
+
+    private final Classifier classifier;
+    private final Instances header;
+    private final Vocabulary terms;
+    private final int[] attributeOfTerm;
+    private final FeatureHasher hasher;
+    private final MinHashIndex verdictCache;
+
+    /**
+     * @param artifact A loaded model artifact.
+     */
+    public NewsClassifier(ModelArtifact artifact) {
+        this(artifact, null);
+    }
+
+    /**
+     * @param artifact     A loaded model artifact.
+     * @param verdictCache Index of known articles answered without scoring, or null.
+     */
+    public NewsClassifier(ModelArtifact artifact, MinHashIndex verdictCache) {
+        this(artifact.classifier(), artifact.header(), verdictCache);
+    }
+
+    /**
+     * @param classifier The trained classifier.
+     * @param header     The training data or its header, with the class index set.
+     */
+    public NewsClassifier(Classifier classifier, Instances header) {
+        this(classifier, header, null);
+    }
+
+    /**
+     * @param classifier   The trained classifier.
+     * @param header       The training data or its header, with the class index set.
+     * @param verdictCache Index of known articles answered without scoring, or null.
+     */
+    public NewsClassifier(Classifier classifier, Instances header, MinHashIndex verdictCache) {
+        this.classifier = classifier;
+        this.verdictCache = verdictCache;
+        this.header = new Instances(header, 0);
+        this.terms = new Vocabulary();
+        this.attributeOfTerm = new int[header.numAttributes()];
+        for (int i = 0; i < header.numAttributes(); i++) {
+            if (i != header.classIndex()) {
+                attributeOfTerm[terms.add(header.attribute(i).name())] = i;
+            }
+        }
+        this.hasher = FeatureHasher.fromVocabulary(terms.terms());
+    }
+
+    /**
+     * Classifies one text: the label of a known near-duplicate if the verdict cache has one, otherwise
+     * the model's prediction.
+     *
+     * @param text The raw text.
+     * @return The predicted label with the class probabilities.
+     */
+    public Prediction classify(String text) throws Exception {
+        Prediction cached = cachedVerdict(text);
+        return cached != null ? cached : score(text);
+    }
+
+    /**
+     * Looks the text up in the verdict cache.
+     *
+     * @param text The raw text.
+     * @return The label of the most similar known article with all probability on it, or null if there
+     * is no cache, no article above its threshold, or the article's label is not a class of this model.
+     */
+    public Prediction cachedVerdict(String text) {
+        if (verdictCache == null) {
+            return null;
+        }
+        MinHashIndex.Match match = verdictCache.lookup(text);
+        int classIndex = match == null ? -1 : header.classAttribute().indexOfValue(match.label());
+        if (classIndex < 0) {
+            return null;
+        }
+        double[] distribution = new double[header.numClasses()];
+        distribution[classIndex] = 1;
+        return new Prediction(match.label(), distribution, match.similarity());
+    }
+
+    /**
+     * Scores one text with the model, bypassing the verdict cache, and records its latency in
+     * {@link PipelineMetrics#CLASSIFICATION}.
+     *
+     * @param text The raw text; it is tokenized on whitespace and lowercased like the training data.
+     * @return The predicted label with the class probabilities.
+     */
+    public Prediction score(String text) throws Exception {
+        PipelineEvents.ClassificationEvent event = new PipelineEvents.ClassificationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        double[] distribution = classifier.distributionForInstance(toInstance(text));
+        int best = 0;
+        for (int c = 1; c < distribution.length; c++) {
+            if (distribution[c] > distribution[best]) {
+                best = c;
+            }
+        }
+        Prediction prediction = new Prediction(header.classAttribute().value(best), distribution);
+        PipelineMetrics.CLASSIFICATION.record(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.label = prediction.label();
+            event.characters = text.length();
+            event.commit();
+        }
+        return prediction;
+    }
+
+    /**
+     * Classifies several texts: known near-duplicates from the verdict cache, the rest scored together
+     * with {@link #scoreBatch}.
+     *
+     * @param texts The raw texts.
+     * @return One prediction per text, in input order.
+     */
+    public List<Prediction> classifyBatch(List<String> texts) throws Exception {
+        List<Prediction> predictions = new ArrayList<>(texts.size());
+        List<String> uncached = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            Prediction cached = cachedVerdict(text);
+            predictions.add(cached);
+            if (cached == null) {
+                uncached.add(text);
+            }
+        }
+        List<Prediction> scored = scoreBatch(uncached);
+        for (int i = 0, next = 0; i < predictions.size(); i++) {
+            if (predictions.get(i) == null) {
+                predictions.set(i, scored.get(next++));
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * Scores several texts with the model in one call, bypassing the verdict cache: their instances
+     * are built into one dataset and handed to the classifier's batch prediction, which the count
+     * models implement by sharing work across the batch. Every text is recorded in
+     * {@link PipelineMetrics#CLASSIFICATION} with its share of the batch's time.
+     *
+     * @param texts The raw texts.
+     * @return One prediction per text, in input order.
+     * @throws Exception If any text fails to score; score the texts one by one to find which.
+     */
+    public List<Prediction> scoreBatch(List<String> texts) throws Exception {
+        if (texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        Instances batch = new Instances(header, texts.size());
+        for (String text : texts) {
+            batch.add(toInstance(text));
+        }
+        double[][] distributions;
+        if (classifier instanceof BatchPredictor) {
+            distributions = ((BatchPredictor) classifier).distributionsForInstances(batch);
+        } else {
+            distributions = new double[texts.size()][];
+            for (int i = 0; i < distributions.length; i++) {
+                distributions[i] = classifier.distributionForInstance(batch.instance(i));
+            }
+        }
+        List<Prediction> predictions = new ArrayList<>(texts.size());
+        for (double[] distribution : distributions) {
+            predictions.add(new Prediction(header.classAttribute().value(Utils.maxIndex(distribution)), distribution));
+        }
+        long share = (System.nanoTime() - start) / texts.size();
+        for (int i = 0; i < texts.size(); i++) {
+            PipelineMetrics.CLASSIFICATION.record(share);
+        }
+        return predictions;
+    }
+
+    /**
+     * @return The class values, in the order of {@link Prediction#distribution()}.
+     */
+    public List<String> classValues() {
+        List<String> values = new ArrayList<>(header.numClasses());
+        for (int c = 0; c < header.numClasses(); c++) {
+            values.add(header.classAttribute().value(c));
+        }
+        return values;
+    }
+
+    /**
+     * Builds the sparse bag-of-words instance of a text; tokens outside the vocabulary are dropped.
+     */
+    private Instance toInstance(String text) {
+        if (hasher != null) {
+            return toHashedInstance(text);
+        }
+        String[] tokens = text.split("\\s+");
+        int[] attributes = new int[tokens.length + 1];
+        int known = 0;
+        attributes[known++] = header.classIndex(); // Stored as missing below
+        for (String token : tokens) {
+            if (!token.isEmpty()) {
+                int termId = terms.indexOf(token.toLowerCase());
+                if (termId >= 0) {
+                    attributes[known++] = attributeOfTerm[termId];
+                }
+            }
+        }
+        Arrays.sort(attributes, 0, known);
+
+        // Collapse repeated attributes into counts; indices must be ascending for SparseInstance
+        int[] indices = new int[known];
+        double[] values = new double[known];
+        int distinct = 0;
+        for (int i = 0; i < known; i++) {
+            if (distinct > 0 && indices[distinct - 1] == attributes[i]) {
+                values[distinct - 1]++;
+            } else {
+                indices[distinct] = attributes[i];
+                values[distinct++] = attributes[i] == header.classIndex() ? Utils.missingValue() : 1;
+            }
+        }
+
+        Instance instance = new SparseInstance(1.0, Arrays.copyOf(values, distinct), Arrays.copyOf(indices, distinct),
+                header.numAttributes());
+        instance.setDataset(header);
+        return instance;
+    }
+
+    /**
+     * Builds the sparse instance of a text from its hashed bucket counts.
+     */
+    private Instance toHashedInstance(String text) {
+        FeatureHasher.Row row = hasher.hashText(text);
+        int length = row.length();
+        int[] indices = new int[length + 1];
+        double[] values = new double[length + 1];
+        indices[0] = header.classIndex();
+        values[0] = Utils.missingValue();
+        for (int i = 0; i < length; i++) {
+            indices[i + 1] = attributeOfTerm[row.columns()[i]];
+            values[i + 1] = row.values()[i];
+        }
+        if (header.classIndex() != 0) {
+            // Bucket attributes keep their column order; only the class entry can be out of place
+            Arrays.sort(indices);
+            values = new double[length + 1];
+            for (int i = 0, bucket = 0; i <= length; i++) {
+                values[i] = indices[i] == header.classIndex() ? Utils.missingValue() : row.values()[bucket++];
+            }
+        }
+
+        Instance instance = new SparseInstance(1.0, values, indices, header.numAttributes());
+        instance.setDataset(header);
+        return instance;
+    }
+
+    /**
+     * A predicted label with the probability of every class value.
+     */
+    public static class Prediction {
+
+        private final String label;
+        private final double[] distribution;
+        private final double similarity;
+
+        public Prediction(String label, double[] distribution) {
+            this(label, distribution, 0);
+        }
+
+        /**
+         * @param label        The predicted label.
+         * @param distribution The probability of every class value.
+         * @param similarity   Similarity of the known article the label was taken from, or 0 if scored.
+         */
+        public Prediction(String label, double[] distribution, double similarity) {
+            this.label = label;
+            this.distribution = distribution;
+            this.similarity = similarity;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public double[] distribution() {
+            return distribution;
+        }
+
+        /**
+         * @return Whether the label comes from the verdict cache rather than the model.
+         */
+        public boolean cached() {
+            return similarity > 0;
+        }
+
+        public double similarity() {
+            return similarity;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package app;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Custom Java Flight Recorder events of the pipeline, shown under "News Pipeline" in JDK Mission
+ * Control. They cost nothing unless a recording is running, e.g.
+ * {@code -XX:StartFlightRecording=filename=pipeline.jfr}.
+ * <p>
+ * Lemmatization runs once per title and text, so only runs slower than 1 ms are recorded; the
+ * {@link PipelineMetrics#LEMMATIZATION} histogram covers all of them.
+ */
+final class PipelineEvents {
+
+    private PipelineEvents() {
+    }
+
+    @Name("app.Stage")
+    @Label("Pipeline Stage")
+    @Category("News Pipeline")
+    @Description("One run of a pipeline stage over a batch of records")
+    @StackTrace(false)
+    static class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Records")
+        long records;
+
+        @Label("Busy Time")
+        @Description("Time spent working on the records, excluding waits on other stages")
+        @Timespan
+        long busyTime;
+
+        @Label("Records per Second")
+        double recordsPerSecond;
+    }
+
+    @Name("app.Lemmatization")
+    @Label("Lemmatization")
+    @Category("News Pipeline")
+    @Description("Lemmatization of one cleaned title or text")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static class LemmatizationEvent extends Event {
+
+        @Label("Mode")
+        String mode;
+
+        @Label("Characters")
+        int characters;
+    }
+
+    @Name("app.Classification")
+    @Label("Classification")
+    @Category("News Pipeline")
+    @Description("Classification of one text by a trained model")
+    @StackTrace(false)
+    static class ClassificationEvent extends Event {
+
+        @Label("Label")
+        String label;
+
+        @Label("Characters")
+        int characters;
+    }
+
+    @Name("app.MetricsSnapshot")
+    @Label("Metrics Snapshot")
+    @Category("News Pipeline")
+    @Description("Periodic sample of the pipeline gauges and latency quantiles")
+    @StackTrace(false)
+    @Period("10 s")
+    static class SnapshotEvent extends Event {
+
+        @Label("Heap Used")
+        @DataAmount
+        long heapUsed;
+
+        @Label("Heap High-Water Mark")
+        @DataAmount
+        long heapPeak;
+
+        @Label("Vocabulary Size")
+        long vocabularySize;
+
+        @Label("Matrix Density")
+        @Percentage
+        double matrixDensity;
+
+        @Label("Lemma Cache Hit Rate")
+        @Percentage
+        double lemmaCacheHitRate;
+
+        @Label("Lemmatization p99")
+        @Timespan
+        long lemmatizationP99;
+
+        @Label("Classification p99")
+        @Timespan
+        long classificationP99;
+    }
+}
@@ -0,0 +1,411 @@
+package app;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide metrics of the pipeline stages and of inference.
+ * <p>
+ * Stages report the records they handled and their busy time through {@link #startStage(String)},
+ * which also emits an {@code app.Stage} flight recorder event (see {@link PipelineEvents}).
+ * Lemmatization and classification latencies go into {@link LatencyHistogram}s, and gauges such as
+ * vocabulary size and matrix density, and the hit counts of the caches, are registered by the
+ * classes that own them. The heap high-water mark is the sum of the JVM's per-pool peak usage, so
+ * no peak between two snapshots is missed; it can overstate the true peak when pools peaked at
+ * different times.
+ * <p>
+ * With {@code -Dapp.metrics.file=path} a snapshot is written every {@code -Dapp.metrics.interval}
+ * seconds (default 10) and once more at exit, as JSON if the path ends in {@code .json} and in the
+ * Prometheus text format otherwise (suitable for the node exporter's textfile collector). Files are
+ * replaced atomically so readers never see a partial snapshot.
+ */
+public final class PipelineMetrics {
+
+    /** Latency of lemmatizing one cleaned title or text. */
+    public static final LatencyHistogram LEMMATIZATION = new LatencyHistogram();
+
+    /** Latency of classifying one text, including building its instance. */
+    public static final LatencyHistogram CLASSIFICATION = new LatencyHistogram();
+
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, StageTotals> stages = new ConcurrentHashMap<>();
+    private static final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier[]> caches = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService reporter;
+
+    static {
+        histograms.put("lemmatization", LEMMATIZATION);
+        histograms.put("classification", CLASSIFICATION);
+        if (FlightRecorder.isAvailable()) {
+            // Registering the periodic event initializes Flight Recorder, which adds about half a second
+            // to the start of short commands; defer it until a recording starts (at once if one has)
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recorderInitialized(FlightRecorder recorder) {
+                    FlightRecorder.addPeriodicEvent(PipelineEvents.SnapshotEvent.class, PipelineMetrics::emitSnapshotEvent);
+                }
+            });
+        }
+    }
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Starts timing a run of a stage; call {@link Stage#stop(long)} when it is done.
+     *
+     * @param name Stage name, e.g. "preprocess".
+     * @return The running stage.
+     */
+    public static Stage startStage(String name) {
+        return new Stage(name);
+    }
+
+    /**
+     * Registers a gauge, replacing any previous gauge of that name.
+     *
+     * @param name  Metric name in snake case, e.g. "vocabulary_size".
+     * @param value Supplies the current value whenever a snapshot is taken.
+     */
+    public static void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Sets a gauge to a fixed value.
+     *
+     * @param name  Metric name in snake case.
+     * @param value The current value.
+     */
+    public static void set(String name, double value) {
+        gauges.put(name, () -> value);
+    }
+
+    /**
+     * Registers the hit and miss counters of a cache.
+     *
+     * @param name   Cache name, e.g. "lemma".
+     * @param hits   Supplies the number of lookups answered from the cache.
+     * @param misses Supplies the number of lookups that were not.
+     */
+    public static void cache(String name, LongSupplier hits, LongSupplier misses) {
+        caches.put(name, new LongSupplier[]{hits, misses});
+    }
+
+    /**
+     * Records the shape of a feature matrix in the matrix gauges.
+     *
+     * @param matrix The matrix just built.
+     */
+    public static void recordMatrix(SparseMatrix matrix) {
+        set("matrix_rows", matrix.numRows());
+        set("matrix_columns", matrix.numColumns());
+        set("matrix_non_zeros", matrix.nonZeros());
+        set("matrix_density", matrix.density());
+    }
+
+    /**
+     * Starts writing snapshots if {@code app.metrics.file} is set. Calling it again has no effect.
+     */
+    public static synchronized void startReporter() {
+        String file = System.getProperty("app.metrics.file");
+        if (file == null || reporter != null) {
+            return;
+        }
+        Path path = Paths.get(file);
+        long interval = Long.parseLong(System.getProperty("app.metrics.interval", "10"));
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> writeSnapshot(path), interval, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> writeSnapshot(path), "metrics-final-snapshot"));
+    }
+
+    /**
+     * Writes the current snapshot, as JSON if the file name ends in .json and as Prometheus text otherwise.
+     *
+     * @param path The snapshot file.
+     */
+    public static void writeSnapshot(Path path) {
+        String snapshot = path.toString().endsWith(".json") ? toJson() : toPrometheus();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.writeString(temporary, snapshot, StandardCharsets.UTF_8);
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing metrics snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The current metrics as a JSON object.
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n  \"timestamp\": \"").append(Instant.now()).append("\",\n");
+        json.append("  \"uptime_seconds\": ").append(number(ManagementFactory.getRuntimeMXBean().getUptime() / 1e3))
+                .append(",\n");
+
+        json.append("  \"stages\": {");
+        String separator = "\n";
+        for (Map.Entry<String, StageTotals> stage : new TreeMap<>(stages).entrySet()) {
+            StageTotals totals = stage.getValue();
+            json.append(separator).append("    \"").append(stage.getKey()).append("\": {\"runs\": ")
+                    .append(totals.runs.sum()).append(", \"records\": ").append(totals.records.sum())
+                    .append(", \"busy_seconds\": ").append(number(totals.busySeconds()))
+                    .append(", \"records_per_second\": ").append(number(totals.recordsPerSecond())).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"latencies\": {");
+        separator = "\n";
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.count();
+            json.append(separator).append("    \"").append(entry.getKey()).append("\": {\"count\": ").append(count)
+                    .append(", \"mean_seconds\": ").append(number(count == 0 ? 0 : histogram.sumSeconds() / count))
+                    .append(", \"p50_seconds\": ").append(number(histogram.quantileSeconds(0.5)))
+                    .append(", \"p90_seconds\": ").append(number(histogram.quantileSeconds(0.9)))
+                    .append(", \"p99_seconds\": ").append(number(histogram.quantileSeconds(0.99)))
+                    .append(", \"max_seconds\": ").append(number(histogram.maxSeconds())).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"caches\": {");
+        separator = "\n";
+        for (Map.Entry<String, LongSupplier[]> cache : new TreeMap<>(caches).entrySet()) {
+            long hits = cache.getValue()[0].getAsLong();
+            long misses = cache.getValue()[1].getAsLong();
+            json.append(separator).append("    \"").append(cache.getKey()).append("\": {\"hits\": ").append(hits)
+                    .append(", \"misses\": ").append(misses)
+                    .append(", \"hit_rate\": ").append(number(hitRate(hits, misses))).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"gauges\": {");
+        separator = "\n";
+        for (Map.Entry<String, Double> gauge : gaugeValues().entrySet()) {
+            json.append(separator).append("    \"").append(gauge.getKey()).append("\": ")
+                    .append(number(gauge.getValue()));
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * @return The current metrics in the Prometheus text exposition format.
+     */
+    public static String toPrometheus() {
+        StringBuilder text = new StringBuilder(4096);
+        Map<String, StageTotals> sortedStages = new TreeMap<>(stages);
+        text.append("# HELP pipeline_stage_records_total Records handled by a pipeline stage.\n");
+        text.append("# TYPE pipeline_stage_records_total counter\n");
+        for (Map.Entry<String, StageTotals> stage : sortedStages.entrySet()) {
+            text.append("pipeline_stage_records_total{stage=\"").append(stage.getKey()).append("\"} ")
+                    .append(stage.getValue().records.sum()).append('\n');
+        }
+        text.append("# HELP pipeline_stage_busy_seconds_total Time a pipeline stage spent working on records.\n");
+        text.append("# TYPE pipeline_stage_busy_seconds_total counter\n");
+        for (Map.Entry<String, StageTotals> stage : sortedStages.entrySet()) {
+            text.append("pipeline_stage_busy_seconds_total{stage=\"").append(stage.getKey()).append("\"} ")
+                    .append(number(stage.getValue().busySeconds())).append('\n');
+        }
+        text.append("# HELP pipeline_stage_records_per_second Records per busy second of a pipeline stage.\n");
+        text.append("# TYPE pipeline_stage_records_per_second gauge\n");
+        for (Map.Entry<String, StageTotals> stage : sortedStages.entrySet()) {
+            text.append("pipeline_stage_records_per_second{stage=\"").append(stage.getKey()).append("\"} ")
+                    .append(number(stage.getValue().recordsPerSecond())).append('\n');
+        }
+
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String name = "pipeline_" + entry.getKey() + "_seconds";
+            LatencyHistogram histogram = entry.getValue();
+            text.append("# HELP ").append(name).append(" Latency of ").append(entry.getKey()).append(".\n");
+            text.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int bucket = 0; bucket < histogram.numBuckets() - 1; bucket++) {
+                cumulative += histogram.bucketCount(bucket);
+                text.append(name).append("_bucket{le=\"").append(number(LatencyHistogram.upperBoundSeconds(bucket)))
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            long count = cumulative + histogram.bucketCount(histogram.numBuckets() - 1);
+            text.append(name).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+            text.append(name).append("_sum ").append(number(histogram.sumSeconds())).append('\n');
+            text.append(name).append("_count ").append(count).append('\n');
+        }
+
+        Map<String, LongSupplier[]> sortedCaches = new TreeMap<>(caches);
+        text.append("# HELP pipeline_cache_hits_total Lookups answered from a cache.\n");
+        text.append("# TYPE pipeline_cache_hits_total counter\n");
+        for (Map.Entry<String, LongSupplier[]> cache : sortedCaches.entrySet()) {
+            text.append("pipeline_cache_hits_total{cache=\"").append(cache.getKey()).append("\"} ")
+                    .append(cache.getValue()[0].getAsLong()).append('\n');
+        }
+        text.append("# HELP pipeline_cache_misses_total Lookups a cache could not answer.\n");
+        text.append("# TYPE pipeline_cache_misses_total counter\n");
+        for (Map.Entry<String, LongSupplier[]> cache : sortedCaches.entrySet()) {
+            text.append("pipeline_cache_misses_total{cache=\"").append(cache.getKey()).append("\"} ")
+                    .append(cache.getValue()[1].getAsLong()).append('\n');
+        }
+
+        for (Map.Entry<String, Double> gauge : gaugeValues().entrySet()) {
+            String name = "pipeline_" + gauge.getKey();
+            text.append("# TYPE ").append(name).append(" gauge\n");
+            text.append(name).append(' ').append(number(gauge.getValue())).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return The registered gauges and the heap gauges, by name.
+     */
+    private static Map<String, Double> gaugeValues() {
+        Map<String, Double> values = new TreeMap<>();
+        for (Map.Entry<String, DoubleSupplier> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsDouble());
+        }
+        long[] heap = heapUsage();
+        values.put("heap_used_bytes", (double) heap[0]);
+        values.put("heap_peak_bytes", (double) heap[1]);
+        return values;
+    }
+
+    /**
+     * @return The used and peak bytes summed over the heap memory pools.
+     */
+    private static long[] heapUsage() {
+        long used = 0;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                used += pool.getUsage().getUsed();
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return new long[]{used, peak};
+    }
+
+    private static void emitSnapshotEvent() {
+        PipelineEvents.SnapshotEvent event = new PipelineEvents.SnapshotEvent();
+        long[] heap = heapUsage();
+        event.heapUsed = heap[0];
+        event.heapPeak = heap[1];
+        DoubleSupplier vocabularySize = gauges.get("vocabulary_size");
+        event.vocabularySize = vocabularySize == null ? 0 : (long) vocabularySize.getAsDouble();
+        DoubleSupplier density = gauges.get("matrix_density");
+        event.matrixDensity = density == null ? 0 : density.getAsDouble();
+        LongSupplier[] lemmaCache = caches.get("lemma");
+        event.lemmaCacheHitRate = lemmaCache == null ? 0 : hitRate(lemmaCache[0].getAsLong(), lemmaCache[1].getAsLong());
+        event.lemmatizationP99 = (long) (LEMMATIZATION.quantileSeconds(0.99) * 1e9);
+        event.classificationP99 = (long) (CLASSIFICATION.quantileSeconds(0.99) * 1e9);
+        event.commit();
+    }
+
+    private static double hitRate(long hits, long misses) {
+        return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "0";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * A running stage, timed from its creation.
+     */
+    public static final class Stage {
+
+        private final String name;
+        private final long start = System.nanoTime();
+        private final PipelineEvents.StageEvent event = new PipelineEvents.StageEvent();
+
+        private Stage(String name) {
+            this.name = name;
+            event.begin();
+        }
+
+        /**
+         * Ends the stage, counting the whole time since it started as busy.
+         *
+         * @param records Number of records the stage handled.
+         */
+        public void stop(long records) {
+            stop(records, System.nanoTime() - start);
+        }
+
+        /**
+         * Ends the stage.
+         *
+         * @param records   Number of records the stage handled.
+         * @param busyNanos Time spent on the records, for stages that also wait on other stages.
+         */
+        public void stop(long records, long busyNanos) {
+            StageTotals totals = stages.computeIfAbsent(name, key -> new StageTotals());
+            totals.runs.increment();
+            totals.records.add(records);
+            totals.busyNanos.add(busyNanos);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = name;
+                event.records = records;
+                event.busyTime = busyNanos;
+                event.recordsPerSecond = busyNanos == 0 ? 0 : records * 1e9 / busyNanos;
+                event.commit();
+            }
+        }
+    }
+
+    private static final class StageTotals {
+
+        final LongAdder runs = new LongAdder();
+        final LongAdder records = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+
+        double busySeconds() {
+            return busyNanos.sum() / 1e9;
+        }
+
+        double recordsPerSecond() {
+            long nanos = busyNanos.sum();
+            return nanos == 0 ? 0 : records.sum() * 1e9 / nanos;
+        }
+    }
+}
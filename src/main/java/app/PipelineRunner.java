@@ -0,0 +1,416 @@
+package app;
+
+import com.opencsv.CSVWriter;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs combine, preprocess, Bag-of-Words and training as one streaming pipeline.
+ * <p>
+ * Stages are connected by bounded in-memory queues, so records flow from the source CSV files to the
+ * model without being written out and parsed again in between:
+ * <ol>
+ *   <li>ingest: one reader per labeled source, as in {@link b_combineCSV};</li>
+ *   <li>preprocess: optionally, near-duplicates of earlier records are dropped by a {@link MinHashIndex};
+ *   records are grouped into chunks and cleaned by {@link c_preprocessing1} on a worker pool, and
+ *   emitted in chunk order;</li>
+ *   <li>vectorize: every preprocessed record is mapped to term ids, or hashed into a fixed number of
+ *   buckets by a {@link FeatureHasher}, and appended to the sparse matrix, as in {@link d_boWords};</li>
+ *   <li>select: optionally, the vocabulary is pruned by a {@link FeatureSelector};</li>
+ *   <li>train: the classifier is optionally cross-validated, then trained and saved as a
+ *   {@link ModelArtifact}, as in {@link e_model}.</li>
+ * </ol>
+ * The intermediate files of the individual stages (CombinedNews.csv, PreprocessedNews.csv,
+ * BagOfWords_Feature_Matrix.bowm and Vocabulary.csv) are only written when a checkpoint directory is set.
+ */
+public class PipelineRunner {
+
+    // Maximum number of records buffered between two stages
+    private static final int CHANNEL_CAPACITY = 1024;
+
+    // Marker closing the preprocessed channel; each raw source is closed by b_combineCSV.END_OF_SOURCE
+    private static final String[] END_OF_STREAM = new String[0];
+
+    private final List<b_combineCSV.LabeledInput> labeledInputs;
+    private final int workers;
+    private final int chunkSize;
+    private final c_preprocessing1.LemmaMode lemmaMode;
+    private final String classifierName;
+    private final Path modelPath;
+    private final Path checkpointDir;
+    private final boolean crossValidate;
+    private final FeatureHasher hasher;
+    private final FeatureSelector selector;
+    private final PreprocessingCache cache;
+    private final MinHashIndex nearDuplicates;
+
+    /**
+     * @param labeledInputs  The source CSV files, each with the label of its rows; labels may repeat.
+     * @param workers        Number of preprocessing worker threads.
+     * @param chunkSize      Number of records preprocessed by a worker per task.
+     * @param lemmaMode      How cleaned text is lemmatized.
+     * @param classifierName Classifier name accepted by {@link e_model#newClassifier}.
+     * @param modelPath      Where the trained model artifact is written.
+     * @param checkpointDir  Directory for the intermediate files, or null to keep everything in memory.
+     * @param crossValidate  Whether to run 10-fold cross-validation before the final training.
+     * @param hasher         Feature hasher replacing the vocabulary, or null for exact term counts.
+     * @param selector       Feature selection applied to the vocabulary, or null to keep every term.
+     * @param cache          Cache of preprocessed articles, see {@link c_preprocessing1#openCache}, or null.
+     * @param nearDuplicates Empty index used to drop near-duplicate records and saved next to the model
+     *                       as its verdict cache, or null to keep every record.
+     */
+    public PipelineRunner(List<b_combineCSV.LabeledInput> labeledInputs, int workers, int chunkSize,
+                          c_preprocessing1.LemmaMode lemmaMode, String classifierName, Path modelPath,
+                          Path checkpointDir, boolean crossValidate, FeatureHasher hasher,
+                          FeatureSelector selector, PreprocessingCache cache, MinHashIndex nearDuplicates) {
+        if (labeledInputs.isEmpty() || workers < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Need at least one input and positive workers and chunkSize");
+        }
+        if (hasher != null && selector != null) {
+            throw new IllegalArgumentException("Feature selection applies to the vocabulary, not to hashed features");
+        }
+        this.labeledInputs = List.copyOf(labeledInputs);
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.lemmaMode = lemmaMode;
+        this.classifierName = classifierName;
+        this.modelPath = modelPath;
+        this.checkpointDir = checkpointDir;
+        this.crossValidate = crossValidate;
+        this.hasher = hasher;
+        this.selector = selector;
+        this.cache = cache;
+        this.nearDuplicates = nearDuplicates;
+    }
+
+    /**
+     * Usage: {@code PipelineRunner [label=path ...] [--stopwords=stopwords.txt] [--lemma-dict=path]
+     * [--workers=n] [--lemma=pipeline|cached|fast] [--classifier=naivebayes|multinomial|flat]
+     * [--model=NaiveBayes.model] [--checkpoint-dir=dir] [--no-cv] [--hash-buckets=n] [--signed-hash]
+     * [--min-df=n] [--max-df=fraction] [--top-k=n] [--score=chi2|ig] [--cache=path] [--dedupe[=threshold]]}
+     * <p>
+     * With {@code --dedupe} records whose text is a near-duplicate (estimated Jaccard similarity
+     * of its word shingles at least the threshold, by default {@value MinHashIndex#DEFAULT_THRESHOLD}) of
+     * an earlier record are dropped before preprocessing, and the index of the kept records is saved as
+     * {@code <model>.lsh}, where {@link ClassifierServer} and {@code e_model classify} pick it up as their
+     * verdict cache.
+     * <p>
+     * With {@code --cache} articles preprocessed by an earlier run with the same configuration are
+     * taken from that {@link PreprocessingCache} file instead of being cleaned and lemmatized again.
+     * <p>
+     * Any of the selection options enables the {@link FeatureSelector}; unset bounds keep every term.
+     * <p>
+     * Without labeled inputs Fake.csv and True.csv are used, as in {@link b_combineCSV}.
+     *
+     * @param args Labeled inputs and options.
+     */
+    public static void main(String[] args) throws Exception {
+        List<b_combineCSV.LabeledInput> labeledInputs = new ArrayList<>();
+        String stopWordsFilePath = "stopwords.txt";
+        String lemmaDictionaryPath = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        c_preprocessing1.LemmaMode lemmaMode = c_preprocessing1.LemmaMode.PIPELINE;
+        String classifierName = "naivebayes";
+        String modelPath = "NaiveBayes.model";
+        String checkpointDir = null;
+        String cachePath = null;
+        double dedupeThreshold = 0; // Deduplication disabled
+        boolean crossValidate = true;
+        int hashBuckets = 0;
+        boolean signedHash = false;
+        boolean selectFeatures = false;
+        int minDf = 1;
+        double maxDf = 1.0;
+        int topK = 0;
+        FeatureSelector.Score score = FeatureSelector.Score.CHI_SQUARE;
+
+        for (String arg : args) {
+            if (arg.startsWith("--stopwords=")) {
+                stopWordsFilePath = arg.substring("--stopwords=".length());
+            } else if (arg.startsWith("--lemma-dict=")) {
+                lemmaDictionaryPath = arg.substring("--lemma-dict=".length());
+            } else if (arg.startsWith("--workers=")) {
+                workers = Integer.parseInt(arg.substring("--workers=".length()));
+            } else if (arg.startsWith("--lemma=")) {
+                lemmaMode = c_preprocessing1.LemmaMode.valueOf(arg.substring("--lemma=".length()).toUpperCase());
+            } else if (arg.startsWith("--classifier=")) {
+                classifierName = arg.substring("--classifier=".length());
+            } else if (arg.startsWith("--model=")) {
+                modelPath = arg.substring("--model=".length());
+            } else if (arg.startsWith("--checkpoint-dir=")) {
+                checkpointDir = arg.substring("--checkpoint-dir=".length());
+            } else if (arg.startsWith("--cache=")) {
+                cachePath = arg.substring("--cache=".length());
+            } else if (arg.equals("--dedupe")) {
+                dedupeThreshold = MinHashIndex.DEFAULT_THRESHOLD;
+            } else if (arg.startsWith("--dedupe=")) {
+                dedupeThreshold = Double.parseDouble(arg.substring("--dedupe=".length()));
+            } else if (arg.equals("--no-cv")) {
+                crossValidate = false;
+            } else if (arg.startsWith("--hash-buckets=")) {
+                hashBuckets = Integer.parseInt(arg.substring("--hash-buckets=".length()));
+            } else if (arg.equals("--signed-hash")) {
+                signedHash = true;
+            } else if (arg.equals("--unsigned-hash")) {
+                signedHash = false; // The default, still accepted
+            } else if (arg.startsWith("--min-df=")) {
+                minDf = Integer.parseInt(arg.substring("--min-df=".length()));
+                selectFeatures = true;
+            } else if (arg.startsWith("--max-df=")) {
+                maxDf = Double.parseDouble(arg.substring("--max-df=".length()));
+                selectFeatures = true;
+            } else if (arg.startsWith("--top-k=")) {
+                topK = Integer.parseInt(arg.substring("--top-k=".length()));
+                selectFeatures = true;
+            } else if (arg.startsWith("--score=")) {
+                score = arg.substring("--score=".length()).equalsIgnoreCase("ig")
+                        ? FeatureSelector.Score.INFORMATION_GAIN : FeatureSelector.Score.CHI_SQUARE;
+                selectFeatures = true;
+            } else if (arg.indexOf('=') > 0 && !arg.startsWith("--")) {
+                int separator = arg.indexOf('=');
+                labeledInputs.add(new b_combineCSV.LabeledInput(arg.substring(0, separator),
+                        arg.substring(separator + 1)));
+            } else {
+                System.err.println("Ignoring unknown argument: " + arg);
+            }
+        }
+        if (labeledInputs.isEmpty()) {
+            labeledInputs.add(new b_combineCSV.LabeledInput("fake", "Fake.csv"));
+            labeledInputs.add(new b_combineCSV.LabeledInput("true", "True.csv"));
+        }
+
+        if (hashBuckets > 0 && classifierName.equalsIgnoreCase("naivebayes")) {
+            // Weka's Gaussian NaiveBayes multiplies densities of every column and overflows on wide
+            // matrices with many empty buckets
+            System.err.println("Warning: hashed features are best trained with --classifier=multinomial");
+        }
+        if (lemmaMode != c_preprocessing1.LemmaMode.FAST) {
+            // Load the CoreNLP models while the sources are opened and the first chunk fills up
+            c_preprocessing1.warmUpInBackground();
+        }
+        c_preprocessing1.loadStopWordsFromFile(stopWordsFilePath);
+        if (lemmaDictionaryPath != null) {
+            c_preprocessing1.loadLemmaDictionaryFromFile(lemmaDictionaryPath);
+        }
+
+        PreprocessingCache cache = cachePath == null ? null : c_preprocessing1.openCache(cachePath, lemmaMode);
+        PipelineRunner runner = new PipelineRunner(labeledInputs, workers, c_preprocessing1.DEFAULT_CHUNK_SIZE,
+                lemmaMode, classifierName, Paths.get(modelPath),
+                checkpointDir == null ? null : Paths.get(checkpointDir), crossValidate,
+                hashBuckets > 0 ? new FeatureHasher(hashBuckets, signedHash) : null,
+                selectFeatures ? new FeatureSelector(minDf, maxDf, topK, score) : null, cache,
+                dedupeThreshold > 0 ? new MinHashIndex(c_preprocessing1.getStopWords(), dedupeThreshold) : null);
+        try {
+            runner.run();
+        } finally {
+            if (cache != null) {
+                System.out.println("Preprocessing cache: " + cache);
+                c_preprocessing1.closeCache(cache);
+            }
+        }
+    }
+
+    /**
+     * Runs all stages and saves the trained model.
+     *
+     * @return The trained classifier.
+     * @throws IOException If a source cannot be read or an output cannot be written.
+     */
+    public Classifier run() throws Exception {
+        if (checkpointDir != null) {
+            Files.createDirectories(checkpointDir);
+        }
+        long start = System.nanoTime();
+
+        BlockingQueue<String[]> rawRecords = new ArrayBlockingQueue<>(CHANNEL_CAPACITY);
+        BlockingQueue<String[]> preprocessedRecords = new ArrayBlockingQueue<>(CHANNEL_CAPACITY);
+        ExecutorService stages = Executors.newFixedThreadPool(labeledInputs.size() + 1);
+        List<Future<?>> stageResults = new ArrayList<>();
+
+        Vocabulary vocabulary = new Vocabulary();
+        SparseMatrix.Builder matrix = new SparseMatrix.Builder(hasher != null ? hasher.numBuckets() : 0);
+        List<String> labels = new ArrayList<>();
+        try {
+            for (b_combineCSV.LabeledInput input : labeledInputs) {
+                stageResults.add(stages.submit(() -> b_combineCSV.readLabeled(input.path(), input.label(), rawRecords)));
+            }
+            stageResults.add(stages.submit(() -> {
+                preprocess(rawRecords, preprocessedRecords);
+                return null;
+            }));
+
+            // Vectorize on the calling thread, growing the vocabulary as records arrive
+            PipelineMetrics.Stage vectorize = PipelineMetrics.startStage("vectorize");
+            long vectorizeNanos = 0;
+            String[] record;
+            while ((record = preprocessedRecords.take()) != END_OF_STREAM) {
+                long recordStart = System.nanoTime();
+                if (hasher != null) {
+                    FeatureHasher.Row row = hasher.hashRecord(record);
+                    matrix.addRow(row.columns(), row.values(), row.length());
+                } else {
+                    matrix.addDocument(d_boWords.toTermIds(record, vocabulary));
+                }
+                labels.add(record[record.length - 2]); // Classification label
+                vectorizeNanos += System.nanoTime() - recordStart;
+            }
+            vectorize.stop(labels.size(), vectorizeNanos);
+
+            // Surface any stage failure once the stream has ended; the preprocess stage is checked first
+            // because readers may still be blocked on the raw channel if it failed
+            for (int i = stageResults.size() - 1; i >= 0; i--) {
+                stageResults.get(i).get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Pipeline stage failed: " + cause.getMessage(), cause);
+        } finally {
+            // Unblocks stages still waiting on a full channel if a later stage failed
+            stages.shutdownNow();
+        }
+
+        SparseMatrix bowMatrix = matrix.build();
+        List<String> terms = hasher != null ? hasher.bucketNames() : vocabulary.terms();
+        PipelineMetrics.recordMatrix(bowMatrix);
+        if (hasher == null) {
+            PipelineMetrics.set("vocabulary_size", vocabulary.size());
+        }
+        System.out.printf("Streamed %d records into a %d x %d BoW matrix (%d non-zeros) in %d ms%n",
+                labels.size(), bowMatrix.numRows(), bowMatrix.numColumns(), bowMatrix.nonZeros(),
+                (System.nanoTime() - start) / 1_000_000);
+        if (checkpointDir != null) {
+            FeatureMatrixFile.write(checkpointDir.resolve("BagOfWords_Feature_Matrix.bowm"), bowMatrix, terms, labels);
+            d_boWords.saveVocabularyToCSV(terms, checkpointDir.resolve("Vocabulary.csv").toString());
+        }
+
+        if (selector != null) {
+            int[] kept = selector.select(bowMatrix, labels);
+            System.out.printf("Selected %d of %d terms%n", kept.length, bowMatrix.numColumns());
+            bowMatrix = FeatureSelector.project(bowMatrix, kept);
+            terms = FeatureSelector.project(terms, kept);
+        }
+
+        Instances data = FeatureMatrixFile.toInstances(bowMatrix, terms, labels);
+        Classifier template = e_model.newClassifier(classifierName);
+        if (crossValidate) {
+            e_model.crossValidate(data, template);
+        }
+        PipelineMetrics.Stage train = PipelineMetrics.startStage("train");
+        Classifier model = AbstractClassifier.makeCopy(template);
+        model.buildClassifier(data);
+        train.stop(data.numInstances());
+        new ModelArtifact(model, data).save(modelPath);
+        if (nearDuplicates != null) {
+            nearDuplicates.save(Paths.get(modelPath + ".lsh"));
+        }
+        System.out.printf("Model saved to %s after %d ms%n", modelPath, (System.nanoTime() - start) / 1_000_000);
+        return model;
+    }
+
+    /**
+     * Preprocess stage: groups raw records into chunks, cleans the chunks on a worker pool and forwards
+     * the cleaned records in chunk order. At most two chunks per worker are in flight, so the stage
+     * applies back-pressure to the readers. The end-of-stream marker is pushed even on failure, unless
+     * the stage is interrupted because the vectorizer failed and stopped draining the channel.
+     * Near-duplicates are dropped here, after the combined checkpoint, which keeps every record.
+     *
+     * @param input  Channel of labeled raw records, closed by one end marker per source.
+     * @param output Channel receiving the preprocessed records.
+     */
+    private void preprocess(BlockingQueue<String[]> input, BlockingQueue<String[]> output) throws Exception {
+        c_preprocessing1 preprocessor = new c_preprocessing1(1, chunkSize, lemmaMode, cache);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Deque<Future<List<String[]>>> inFlight = new ArrayDeque<>();
+        boolean interrupted = false;
+        try (CSVWriter combined = checkpointWriter("CombinedNews.csv");
+             CSVWriter preprocessed = checkpointWriter("PreprocessedNews.csv")) {
+            List<String[]> chunk = new ArrayList<>(chunkSize);
+            int finishedSources = 0;
+            int duplicates = 0;
+            while (finishedSources < labeledInputs.size()) {
+                String[] record = input.take();
+                if (record == b_combineCSV.END_OF_SOURCE) {
+                    finishedSources++;
+                    continue;
+                }
+                if (combined != null) {
+                    combined.writeNext(record);
+                }
+                if (nearDuplicates != null && record.length >= 2
+                        && nearDuplicates.addIfNew(record[1], record[record.length - 1]) != null) {
+                    duplicates++;
+                    continue;
+                }
+                chunk.add(record);
+                if (chunk.size() == chunkSize) {
+                    List<String[]> full = chunk;
+                    inFlight.add(pool.submit(() -> preprocessor.preprocessData(full)));
+                    chunk = new ArrayList<>(chunkSize);
+                    if (inFlight.size() >= 2 * workers) {
+                        forward(inFlight.poll().get(), output, preprocessed);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                List<String[]> last = chunk;
+                inFlight.add(pool.submit(() -> preprocessor.preprocessData(last)));
+            }
+            while (!inFlight.isEmpty()) {
+                forward(inFlight.poll().get(), output, preprocessed);
+            }
+            if (nearDuplicates != null) {
+                System.out.printf("Dropped %d near-duplicate records (%d distinct articles indexed)%n", duplicates,
+                        nearDuplicates.size());
+            }
+        } catch (InterruptedException e) {
+            interrupted = true; // Throwing cleared the interrupt flag
+            throw e;
+        } finally {
+            pool.shutdownNow();
+            if (!interrupted && !Thread.currentThread().isInterrupted()) {
+                output.put(END_OF_STREAM);
+            }
+        }
+    }
+
+    private static void forward(List<String[]> records, BlockingQueue<String[]> output, CSVWriter checkpoint)
+            throws InterruptedException {
+        for (String[] record : records) {
+            if (checkpoint != null) {
+                checkpoint.writeNext(record);
+            }
+            output.put(record);
+        }
+    }
+
+    /**
+     * @return A writer for the named checkpoint file, or null if checkpoints are disabled.
+     */
+    private CSVWriter checkpointWriter(String fileName) throws IOException {
+        if (checkpointDir == null) {
+            return null;
+        }
+        return new CSVWriter(new BufferedWriter(new FileWriter(checkpointDir.resolve(fileName).toFile()), 1 << 16));
+    }
+}
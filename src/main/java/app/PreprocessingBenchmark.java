@@ -0,0 +1,56 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures preprocessing throughput of {@link c_preprocessing1} for an increasing number of workers.
+ * Each run starts a fresh worker pool, so the timings include building one CoreNLP pipeline per worker.
+ * <p>
+ * Usage: {@code PreprocessingBenchmark [input.csv] [stopwords.txt] [maxWorkers] [sampleSize]}
+ */
+public class PreprocessingBenchmark {
+
+    public static void main(String[] args) {
+        String inputFilePath = args.length > 0 ? args[0] : "CombinedNews.csv";
+        String stopWordsFilePath = args.length > 1 ? args[1] : "stopwords.txt";
+        int maxWorkers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int sampleSize = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+        c_preprocessing1.loadStopWordsFromFile(stopWordsFilePath);
+        List<String[]> records = c_preprocessing1.readCSV(inputFilePath);
+        List<String[]> sample = new ArrayList<>(records.subList(0, Math.min(sampleSize, records.size())));
+
+        // Warm up the JIT and the calling thread's pipeline before timing anything
+        new c_preprocessing1(1, c_preprocessing1.DEFAULT_CHUNK_SIZE)
+                .preprocessData(sample.subList(0, Math.min(100, sample.size())));
+
+        System.out.println("workers\trecords/sec\tspeedup");
+        double baseline = 0;
+        for (int workers = 1; workers <= maxWorkers; workers = nextWorkerCount(workers, maxWorkers)) {
+            // Small chunks keep every worker busy on modest sample sizes
+            int chunkSize = Math.max(1, Math.min(c_preprocessing1.DEFAULT_CHUNK_SIZE, sample.size() / (workers * 4)));
+            c_preprocessing1 preprocessor = new c_preprocessing1(workers, chunkSize);
+
+            long start = System.nanoTime();
+            int processed = preprocessor.preprocessData(sample).size();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            double throughput = processed / seconds;
+            if (workers == 1) {
+                baseline = throughput;
+            }
+            System.out.printf("%d\t%.1f\t%.2fx%n", workers, throughput, throughput / baseline);
+        }
+    }
+
+    /**
+     * Doubles the worker count, making sure {@code maxWorkers} itself is always measured.
+     */
+    private static int nextWorkerCount(int workers, int maxWorkers) {
+        if (workers == maxWorkers) {
+            return maxWorkers + 1;
+        }
+        return Math.min(workers * 2, maxWorkers);
+    }
+}
@@ -0,0 +1,419 @@
+package app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Content-addressed on-disk cache of preprocessed titles and texts.
+ * <p>
+ * Entries are keyed by the SHA-256 of the raw title and text and tagged with a fingerprint of the
+ * preprocessing configuration (stop words, lemma mode, lemma dictionary, see
+ * {@link c_preprocessing1#configurationFingerprint}). Only entries carrying the current fingerprint
+ * are loaded, so changing the configuration misses instead of returning stale output.
+ * <p>
+ * The file is a header {@code [int magic][long generation]} followed by an append-only log of frames
+ * {@code [int length][int crc32][payload]}. Readers stop at
+ * the first incomplete or corrupt frame, so a file can be read while another process appends to it
+ * and a crash mid-append only loses that batch. Appends and compaction take an exclusive lock on a
+ * sidecar {@code .lock} file; before appending, a writer picks up frames appended by others since it
+ * last looked and cuts off a torn tail. {@link #compact()} rewrites the live entries to a new file
+ * and renames it over the old one with the next generation number, so readers holding the old file
+ * keep a consistent view and writers notice the replacement from the header and reopen.
+ * <p>
+ * Usage: {@code PreprocessingCache [cache file] [--stopwords=path] [--lemma=mode] [--lemma-dict=path]
+ * [--compact]} prints the frame and live entry counts of the file for that configuration and
+ * optionally compacts it, dropping superseded entries and the entries of every other configuration.
+ */
+public class PreprocessingCache implements Closeable {
+
+    private static final int MAGIC = 0x50504332; // "PPC2"
+    private static final int OLD_MAGIC = 0x50504331; // "PPC1", without the generation
+    private static final int FILE_HEADER_BYTES = 12;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int KEY_BYTES = 16;
+
+    private final Path path;
+    private final Path lockPath;
+    private final long fingerprint;
+    // Replaced as a whole when the file is reloaded, so lookups never see a half-loaded map
+    private volatile Map<Key, String[]> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder appended = new LongAdder();
+
+    private FileChannel channel;
+    private long generation;
+    private long validEnd;
+    private long frames;
+
+    /**
+     * Opens the cache file, creating it if needed, and loads the entries of the given configuration.
+     *
+     * @param path        The cache file.
+     * @param fingerprint Fingerprint of the preprocessing configuration.
+     * @throws IOException If the file cannot be opened.
+     */
+    @SuppressWarnings("try") // The lock is only held, never referenced
+    public PreprocessingCache(Path path, long fingerprint) throws IOException {
+        this.path = path;
+        this.lockPath = path.resolveSibling(path.getFileName() + ".lock");
+        this.fingerprint = fingerprint;
+        try (FileChannel lockChannel = openLock(); FileLock ignored = lockChannel.lock()) {
+            openChannel();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String cachePath = "PreprocessedNews.cache";
+        String stopWordsFilePath = "stopwords.txt";
+        String lemmaDictionaryPath = null;
+        c_preprocessing1.LemmaMode lemmaMode = c_preprocessing1.LemmaMode.PIPELINE;
+        boolean compact = false;
+        for (String arg : args) {
+            if (arg.equals("--compact")) {
+                compact = true;
+            } else if (arg.startsWith("--stopwords=")) {
+                stopWordsFilePath = arg.substring("--stopwords=".length());
+            } else if (arg.startsWith("--lemma=")) {
+                lemmaMode = c_preprocessing1.LemmaMode.valueOf(arg.substring("--lemma=".length()).toUpperCase());
+            } else if (arg.startsWith("--lemma-dict=")) {
+                lemmaDictionaryPath = arg.substring("--lemma-dict=".length());
+            } else {
+                cachePath = arg;
+            }
+        }
+
+        // The configuration decides which entries are live, exactly as in c_preprocessing1
+        c_preprocessing1.loadStopWordsFromFile(stopWordsFilePath);
+        if (lemmaDictionaryPath != null) {
+            c_preprocessing1.loadLemmaDictionaryFromFile(lemmaDictionaryPath);
+        }
+        try (PreprocessingCache cache = new PreprocessingCache(Paths.get(cachePath),
+                c_preprocessing1.configurationFingerprint(lemmaMode))) {
+            System.out.printf("%s: %d frames, %d bytes, %d live entries for this configuration%n", cachePath,
+                    cache.frames, cache.validEnd, cache.size());
+            if (compact) {
+                cache.compact();
+                System.out.printf("Compacted to %d frames, %d bytes%n", cache.frames, cache.validEnd);
+            }
+        }
+    }
+
+    /**
+     * Computes the cache key of a raw title and text.
+     *
+     * @param title The raw title.
+     * @param text  The raw text.
+     * @return The content key.
+     */
+    public static Key keyOf(String title, String text) {
+        MessageDigest digest = sha256();
+        digest.update(title.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        return new Key(hash.getLong(), hash.getLong());
+    }
+
+    /**
+     * Looks up the preprocessed title and text of a key, counting a hit or a miss.
+     *
+     * @param key The content key.
+     * @return The preprocessed title and text, or null if not cached.
+     */
+    public String[] get(Key key) {
+        String[] value = entries.get(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Adds entries and appends them to the file as one batch.
+     *
+     * @param keys   Content keys.
+     * @param values Preprocessed title and text of each key.
+     * @throws IOException If the file cannot be written.
+     */
+    @SuppressWarnings("try") // The lock is only held, never referenced
+    public synchronized void putAll(List<Key> keys, List<String[]> values) throws IOException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(256 * keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            writeFrame(batch, keys.get(i), values.get(i));
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toByteArray());
+
+        try (FileChannel lockChannel = openLock(); FileLock ignored = lockChannel.lock()) {
+            catchUp();
+            channel.truncate(validEnd); // Drops a torn frame left by a crashed writer
+            long position = validEnd;
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+            channel.force(false);
+            validEnd = position;
+            frames += keys.size();
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            entries.put(keys.get(i), values.get(i));
+        }
+        appended.add(keys.size());
+    }
+
+    /**
+     * Rewrites the file with one frame per live entry of the current configuration. Lookups running
+     * meanwhile see the entries loaded before the compaction until the rewritten file is loaded.
+     *
+     * @throws IOException If the file cannot be rewritten.
+     */
+    @SuppressWarnings("try") // The lock is only held, never referenced
+    public synchronized void compact() throws IOException {
+        try (FileChannel lockChannel = openLock(); FileLock ignored = lockChannel.lock()) {
+            catchUp();
+            Path temporary = path.resolveSibling(path.getFileName() + ".compact");
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            new DataOutputStream(header).writeInt(MAGIC);
+            new DataOutputStream(header).writeLong(generation + 1);
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.wrap(header.toByteArray()));
+                ByteArrayOutputStream batch = new ByteArrayOutputStream(1 << 16);
+                for (Map.Entry<Key, String[]> entry : entries.entrySet()) {
+                    writeFrame(batch, entry.getKey(), entry.getValue());
+                    if (batch.size() >= 1 << 16) {
+                        out.write(ByteBuffer.wrap(batch.toByteArray()));
+                        batch.reset();
+                    }
+                }
+                out.write(ByteBuffer.wrap(batch.toByteArray()));
+                out.force(true);
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            channel.close();
+            openChannel();
+        }
+    }
+
+    /**
+     * @return Whether compaction would at least halve the file, because most frames are superseded or
+     * belong to other configurations.
+     */
+    public synchronized boolean isWasteful() {
+        return frames > 2L * entries.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of entries appended by this instance.
+     */
+    public long appended() {
+        return appended.sum();
+    }
+
+    /**
+     * @return Number of live entries of the current configuration.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses, %d entries appended, %d live entries", hits(), misses(),
+                appended(), size());
+    }
+
+    /**
+     * Opens the cache file, writing the header if it is new, and loads every valid frame into a new
+     * map that then replaces {@link #entries}. A file in the old format without a generation is
+     * started over. Must be called with the file lock held.
+     */
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        channel.read(header, 0);
+        int magic = header.getInt(0);
+        if (header.position() >= 4 && magic != MAGIC && magic != OLD_MAGIC) {
+            channel.close();
+            throw new IOException(path + " is not a preprocessing cache");
+        }
+        if (magic == MAGIC && header.position() == FILE_HEADER_BYTES) {
+            generation = header.getLong(4);
+        } else {
+            // New, torn or old-format file
+            generation = 0;
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(0, MAGIC).putLong(4, generation), 0);
+        }
+        validEnd = FILE_HEADER_BYTES;
+        frames = 0;
+        Map<Key, String[]> loaded = new ConcurrentHashMap<>();
+        readFrames(loaded);
+        entries = loaded;
+    }
+
+    /**
+     * Reopens the file if it was compacted by another process, then reads frames appended by other
+     * writers since {@link #validEnd}. Must be called with the file lock held.
+     * <p>
+     * Compaction is recognized by the generation in the header of the file now at {@link #path}, or
+     * by that file being shorter than what was already read, rather than by file identity, which not
+     * every platform reports.
+     */
+    private void catchUp() throws IOException {
+        boolean replaced;
+        try (FileChannel current = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            current.read(header, 0);
+            replaced = header.hasRemaining() || header.getInt(0) != MAGIC || header.getLong(4) != generation
+                    || current.size() < validEnd;
+        }
+        if (replaced) {
+            channel.close();
+            openChannel();
+        } else {
+            readFrames(entries);
+        }
+    }
+
+    /**
+     * Reads frames from {@link #validEnd} until the end of the file or the first incomplete or corrupt
+     * frame, advancing {@code validEnd} past every frame read.
+     *
+     * @param into Map receiving the entries of the current configuration.
+     */
+    private void readFrames(Map<Key, String[]> into) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        while (validEnd + FRAME_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, validEnd);
+            int length = header.getInt(0);
+            if (length < 8 + KEY_BYTES || validEnd + FRAME_HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, validEnd + FRAME_HEADER_BYTES);
+            crc.reset();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            payload.flip();
+            long entryFingerprint = payload.getLong();
+            Key key = new Key(payload.getLong(), payload.getLong());
+            if (entryFingerprint == fingerprint) {
+                into.put(key, new String[]{readString(payload), readString(payload)});
+            }
+            validEnd += FRAME_HEADER_BYTES + length;
+            frames++;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + path);
+            }
+        }
+    }
+
+    private void writeFrame(ByteArrayOutputStream out, Key key, String[] value) throws IOException {
+        byte[] title = value[0].getBytes(StandardCharsets.UTF_8);
+        byte[] text = value[1].getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(8 + KEY_BYTES + 4 + title.length + 4 + text.length);
+        payload.putLong(fingerprint).putLong(key.high).putLong(key.low);
+        payload.putInt(title.length).put(title).putInt(text.length).put(text);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(payload.capacity());
+        data.writeInt((int) crc.getValue());
+        data.write(payload.array());
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private FileChannel openLock() throws IOException {
+        return FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    /**
+     * First 128 bits of the SHA-256 of a raw title and text.
+     */
+    public static final class Key {
+
+        private final long high;
+        private final long low;
+
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).high == high && ((Key) o).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (high ^ (high >>> 32));
+        }
+    }
+}
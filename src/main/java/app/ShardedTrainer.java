@@ -0,0 +1,366 @@
+package app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trains a {@link MultinomialNaiveBayes} over partitions of the preprocessed data in separate
+ * processes and merges the results.
+ * <p>
+ * A map worker reads one contiguous range of records of the preprocessed CSV and writes the class
+ * and term counts of that range to a partial model file (magic "FNPM", format version, the range,
+ * then {@link MultinomialNaiveBayes#writeStatistics}). The reducer merges partial files with
+ * {@link MultinomialNaiveBayes#merge} and saves the result as a {@link ModelArtifact}. When the
+ * partials are given in range order the merged model has the same class values, vocabulary order
+ * and counts as a model trained on all records at once in one process (as {@code e_model update}
+ * does into a new model); in any other order only the term order differs and the predictions are
+ * the same.
+ * <p>
+ * Usage:
+ * <ul>
+ *   <li>{@code map [preprocessed.csv] --from=first --to=end [--offset=byte] --output=part.nbp
+ *   [--hash-buckets=n] [--signed-hash]} counts records {@code [first, end)}; with {@code --offset},
+ *   the byte offset of record {@code first}, it starts parsing there instead of at the top of the
+ *   file;</li>
+ *   <li>{@code reduce part.nbp ... [--model=NaiveBayes.model]} merges partial files;</li>
+ *   <li>{@code local [preprocessed.csv] [--shards=n] [--model=path] [--verify] [--hash-buckets=n]
+ *   [--signed-hash]} splits the records into n ranges of about equal size in bytes, runs one map
+ *   worker JVM per range with the offset of its first record, reduces the partials and, with
+ *   {@code --verify}, checks the merged model against one trained in this process: identical
+ *   statistics and identical predictions for every record.</li>
+ * </ul>
+ */
+public class ShardedTrainer {
+
+    private static final int MAGIC = 0x464E504D; // "FNPM"
+    private static final int VERSION = 1;
+
+    public static void main(String[] args) throws Exception {
+        String command = args.length > 0 ? args[0] : "";
+        String inputFilePath = "PreprocessedNews.csv";
+        String outputPath = null;
+        String modelPath = "NaiveBayes.model";
+        long from = 0;
+        long to = Long.MAX_VALUE;
+        long offset = -1;
+        int shards = Runtime.getRuntime().availableProcessors();
+        int hashBuckets = 0;
+        boolean signedHash = false;
+        boolean verify = false;
+        List<Path> partials = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--from=")) {
+                from = Long.parseLong(arg.substring("--from=".length()));
+            } else if (arg.startsWith("--to=")) {
+                to = Long.parseLong(arg.substring("--to=".length()));
+            } else if (arg.startsWith("--offset=")) {
+                offset = Long.parseLong(arg.substring("--offset=".length()));
+            } else if (arg.startsWith("--output=")) {
+                outputPath = arg.substring("--output=".length());
+            } else if (arg.startsWith("--model=")) {
+                modelPath = arg.substring("--model=".length());
+            } else if (arg.startsWith("--shards=")) {
+                shards = Integer.parseInt(arg.substring("--shards=".length()));
+            } else if (arg.startsWith("--hash-buckets=")) {
+                hashBuckets = Integer.parseInt(arg.substring("--hash-buckets=".length()));
+            } else if (arg.equals("--signed-hash")) {
+                signedHash = true;
+            } else if (arg.equals("--unsigned-hash")) {
+                signedHash = false; // The default, still accepted
+            } else if (arg.equals("--verify")) {
+                verify = true;
+            } else if (command.equals("reduce")) {
+                partials.add(Paths.get(arg));
+            } else {
+                inputFilePath = arg;
+            }
+        }
+        FeatureHasher hasher = hashBuckets > 0 ? new FeatureHasher(hashBuckets, signedHash) : null;
+
+        switch (command) {
+            case "map":
+                if (outputPath == null) {
+                    throw new IllegalArgumentException("map needs --output=path");
+                }
+                long start = System.nanoTime();
+                MultinomialNaiveBayes partial = train(inputFilePath, from, to, offset, hasher);
+                writePartial(Paths.get(outputPath), partial, from, to);
+                System.out.printf("Shard [%d, %s): %s in %d ms, written to %s%n", from,
+                        to == Long.MAX_VALUE ? "end" : String.valueOf(to), partial,
+                        (System.nanoTime() - start) / 1_000_000, outputPath);
+                break;
+            case "reduce":
+                MultinomialNaiveBayes merged = reduce(partials);
+                new ModelArtifact(merged, merged.header()).save(Paths.get(modelPath));
+                System.out.println("Merged " + partials.size() + " partial models into " + merged + ", saved to " + modelPath);
+                break;
+            case "local":
+                runLocal(inputFilePath, shards, Paths.get(modelPath), hasher, signedHash, verify);
+                break;
+            default:
+                System.err.println("Usage: ShardedTrainer map|reduce|local [options]");
+                System.exit(1);
+        }
+    }
+
+    /**
+     * Counts a range of records of a preprocessed CSV file, parsing every record before it.
+     *
+     * @param filePath Preprocessed CSV (title, text, ..., label, text length).
+     * @param from     Index of the first record to learn.
+     * @param to       Index one past the last record to learn.
+     * @param hasher   Feature hasher, or null to collect a vocabulary.
+     * @return The model holding the counts of the range.
+     */
+    public static MultinomialNaiveBayes train(String filePath, long from, long to, FeatureHasher hasher)
+            throws IOException {
+        return train(filePath, from, to, -1, hasher);
+    }
+
+    /**
+     * Counts a range of records of a preprocessed CSV file.
+     *
+     * @param filePath Preprocessed CSV (title, text, ..., label, text length).
+     * @param from     Index of the first record to learn.
+     * @param to       Index one past the last record to learn.
+     * @param offset   Byte offset of record {@code from}, or -1 to find it by parsing the records before it.
+     * @param hasher   Feature hasher, or null to collect a vocabulary.
+     * @return The model holding the counts of the range.
+     */
+    public static MultinomialNaiveBayes train(String filePath, long from, long to, long offset, FeatureHasher hasher)
+            throws IOException {
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("map");
+        MultinomialNaiveBayes model = new MultinomialNaiveBayes();
+        if (hasher != null) {
+            // Every shard starts from the same bucket columns, whatever tokens it sees
+            for (String bucket : hasher.bucketNames()) {
+                model.vocabulary().add(bucket);
+            }
+        }
+        long index = 0;
+        try (MappedCsvReader reader = new MappedCsvReader(Paths.get(filePath))) {
+            if (offset >= 0) {
+                reader.seek(offset);
+                index = from;
+            }
+            MappedCsvReader.Row record;
+            while (index < to && (record = reader.readNext()) != null) {
+                if (index++ < from) {
+                    continue;
+                }
+                String label = record.get(record.size() - 2);
+                if (hasher != null) {
+                    FeatureHasher.Row row = hasher.hashRecord(record.toArray());
+                    model.learn(label, row.columns(), row.values(), row.length());
+                } else {
+                    model.learn(label, d_boWords.toTermIds(record.field(0), record.field(1), model.vocabulary()));
+                }
+            }
+        }
+        stage.stop(Math.max(0, index - from));
+        return model;
+    }
+
+    /**
+     * Merges partial models in the given order.
+     *
+     * @param partials Partial model files written by map workers.
+     * @return The merged model.
+     */
+    public static MultinomialNaiveBayes reduce(List<Path> partials) throws IOException {
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("reduce");
+        MultinomialNaiveBayes merged = new MultinomialNaiveBayes();
+        for (Path partial : partials) {
+            merged.merge(readPartial(partial));
+        }
+        stage.stop(partials.size());
+        return merged;
+    }
+
+    /**
+     * Writes the counts of one shard.
+     *
+     * @param path    The partial model file.
+     * @param partial The shard's model.
+     * @param from    Index of the shard's first record.
+     * @param to      Index one past the shard's last record.
+     */
+    public static void writePartial(Path path, MultinomialNaiveBayes partial, long from, long to) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(from);
+            out.writeLong(to);
+            partial.writeStatistics(out);
+        }
+    }
+
+    /**
+     * Reads the counts of one shard.
+     *
+     * @param path The partial model file.
+     * @return The shard's model.
+     */
+    public static MultinomialNaiveBayes readPartial(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a partial model file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(path + " has unsupported version " + version);
+            }
+            in.readLong(); // Range, informational
+            in.readLong();
+            return MultinomialNaiveBayes.readStatistics(in);
+        }
+    }
+
+    /**
+     * Splits the records into contiguous ranges, trains each range in its own JVM, merges the partial
+     * models and saves the result, optionally verifying it against single-process training.
+     */
+    private static void runLocal(String inputFilePath, int shards, Path modelPath, FeatureHasher hasher,
+                                 boolean signedHash, boolean verify) throws Exception {
+        long start = System.nanoTime();
+        MultinomialNaiveBayes merged = trainInWorkers(inputFilePath, shards, hasher, signedHash);
+        new ModelArtifact(merged, merged.header()).save(modelPath);
+        System.out.printf("Trained in %d worker JVMs in %d ms: %s, saved to %s%n", shards,
+                (System.nanoTime() - start) / 1_000_000, merged, modelPath);
+
+        if (verify) {
+            start = System.nanoTime();
+            MultinomialNaiveBayes single = train(inputFilePath, 0, Long.MAX_VALUE, hasher);
+            System.out.printf("Single-process training took %d ms%n", (System.nanoTime() - start) / 1_000_000);
+            if (!verifyEqual(merged, single, inputFilePath)) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Runs one map worker JVM per range of {@link #splitRecords} and merges their partial models in
+     * range order.
+     *
+     * @return The merged model.
+     */
+    static MultinomialNaiveBayes trainInWorkers(String inputFilePath, int shards, FeatureHasher hasher,
+                                                boolean signedHash) throws IOException, InterruptedException {
+        long[][] boundaries = splitRecords(inputFilePath, shards);
+        Path workDir = Files.createTempDirectory("shards");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        List<Process> workers = new ArrayList<>();
+        List<Path> partials = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            Path partial = workDir.resolve("part-" + shard + ".nbp");
+            partials.add(partial);
+            List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                    ShardedTrainer.class.getName(), "map", inputFilePath, "--from=" + boundaries[0][shard],
+                    "--to=" + boundaries[0][shard + 1], "--offset=" + boundaries[1][shard], "--output=" + partial));
+            if (hasher != null) {
+                command.add("--hash-buckets=" + hasher.numBuckets());
+                if (signedHash) {
+                    command.add("--signed-hash");
+                }
+            }
+            workers.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            int exitCode = workers.get(shard).waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Map worker " + shard + " failed with exit code " + exitCode);
+            }
+        }
+
+        MultinomialNaiveBayes merged = reduce(partials);
+        for (Path partial : partials) {
+            Files.deleteIfExists(partial);
+        }
+        Files.deleteIfExists(workDir);
+        return merged;
+    }
+
+    /**
+     * Splits a file into contiguous ranges of whole records of about equal size in bytes, in one pass
+     * that notes where each range starts, so workers can seek to their range instead of parsing the
+     * records before it.
+     *
+     * @return {@code [0][i]} the index and {@code [1][i]} the byte offset of the first record of range
+     * i, for i up to {@code shards}, where they mark the end of the file.
+     */
+    static long[][] splitRecords(String filePath, int shards) throws IOException {
+        long[][] boundaries = new long[2][shards + 1];
+        long fileSize = Files.size(Paths.get(filePath));
+        long index = 0;
+        int next = 0;
+        try (MappedCsvReader reader = new MappedCsvReader(Paths.get(filePath))) {
+            while (true) {
+                // Every range whose share of the bytes starts at or before this record starts with it
+                long offset = reader.position();
+                while (next <= shards && offset >= fileSize * next / shards) {
+                    boundaries[0][next] = index;
+                    boundaries[1][next++] = offset;
+                }
+                if (reader.readNext() == null) {
+                    break;
+                }
+                index++;
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * Checks that two models hold the same statistics and predict the same distribution for every
+     * record of the file.
+     *
+     * @return Whether the models agree.
+     */
+    static boolean verifyEqual(MultinomialNaiveBayes merged, MultinomialNaiveBayes single, String filePath)
+            throws IOException {
+        boolean sameStatistics = Arrays.equals(statistics(merged), statistics(single));
+        System.out.println("Statistics identical: " + sameStatistics);
+
+        NewsClassifier mergedClassifier = new NewsClassifier(merged, merged.header());
+        NewsClassifier singleClassifier = new NewsClassifier(single, single.header());
+        long checked = 0;
+        long mismatches = 0;
+        try (MappedCsvReader reader = new MappedCsvReader(Paths.get(filePath))) {
+            MappedCsvReader.Row record;
+            while ((record = reader.readNext()) != null) {
+                String text = record.get(0) + " " + record.get(1);
+                try {
+                    if (!Arrays.equals(mergedClassifier.classify(text).distribution(),
+                            singleClassifier.classify(text).distribution())) {
+                        mismatches++;
+                    }
+                } catch (Exception e) {
+                    throw new IOException("Classification failed: " + e.getMessage(), e);
+                }
+                checked++;
+            }
+        }
+        System.out.printf("Predictions checked: %d, mismatches: %d%n", checked, mismatches);
+        return sameStatistics && mismatches == 0;
+    }
+
+    static byte[] statistics(MultinomialNaiveBayes model) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            model.writeStatistics(out);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,39 @@
+package app;
+
+/**
+ * Sparse dot product of a dense weight array with a sparse vector given as parallel index and value
+ * arrays.
+ * <p>
+ * When the incubating Vector API module is present ({@code --add-modules jdk.incubator.vector}) the
+ * product is computed by {@link VectorizedSparseDot} with gathered SIMD lanes; otherwise, or when
+ * {@code -Dapp.vector=false} is set, a scalar loop is used. The vectorized class is only loaded when
+ * it is used, so the scalar path runs on any JVM.
+ */
+final class SparseDot {
+
+    /** Whether the Vector API implementation is in use. */
+    static final boolean VECTORIZED = !"false".equals(System.getProperty("app.vector"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private SparseDot() {
+    }
+
+    /**
+     * @param weights Dense weights indexed by column.
+     * @param indices Columns of the sparse entries.
+     * @param values  Values of the sparse entries.
+     * @param length  Number of entries to take from the arrays.
+     * @return The sum of {@code weights[indices[i]] * values[i]}.
+     */
+    static float dot(float[] weights, int[] indices, float[] values, int length) {
+        return VECTORIZED ? VectorizedSparseDot.dot(weights, indices, values, length) : scalarDot(weights, indices, values, length);
+    }
+
+    static float scalarDot(float[] weights, int[] indices, float[] values, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += weights[indices[i]] * values[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,172 @@
+package app;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Document-term count matrix in compressed sparse row (CSR) form.
+ * <p>
+ * Row {@code r} holds the entries {@code rowStart(r) <= k < rowEnd(r)}; entry {@code k} has column
+ * (term id) {@code column(k)} and count {@code value(k)}. Columns are strictly increasing within a
+ * row and only non-zero counts are stored. Instances are immutable once built.
+ */
+public class SparseMatrix {
+
+    private final int numColumns;
+    private final int[] rowPointers;
+    private final int[] columns;
+    private final int[] values;
+
+    /**
+     * Wraps existing CSR arrays without copying them.
+     *
+     * @param numColumns  Number of columns.
+     * @param rowPointers Row start offsets, with one extra trailing entry holding the number of non-zeros.
+     * @param columns     Column index of every non-zero entry.
+     * @param values      Count of every non-zero entry.
+     */
+    public SparseMatrix(int numColumns, int[] rowPointers, int[] columns, int[] values) {
+        this.numColumns = numColumns;
+        this.rowPointers = rowPointers;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * Builds a count matrix from documents given as term-id sequences.
+     *
+     * @param documents  Term ids of every document, in any order and with repeats.
+     * @param numColumns Number of columns, i.e. the vocabulary size.
+     * @return The CSR matrix with one row per document.
+     */
+    public static SparseMatrix fromDocuments(List<int[]> documents, int numColumns) {
+        Builder builder = new Builder(numColumns);
+        for (int[] document : documents) {
+            builder.addDocument(document);
+        }
+        return builder.build();
+    }
+
+    public int numRows() {
+        return rowPointers.length - 1;
+    }
+
+    public int numColumns() {
+        return numColumns;
+    }
+
+    /**
+     * @return Number of stored (non-zero) entries.
+     */
+    public int nonZeros() {
+        return rowPointers[rowPointers.length - 1];
+    }
+
+    public int rowStart(int row) {
+        return rowPointers[row];
+    }
+
+    public int rowEnd(int row) {
+        return rowPointers[row + 1];
+    }
+
+    public int column(int entry) {
+        return columns[entry];
+    }
+
+    public int value(int entry) {
+        return values[entry];
+    }
+
+    /**
+     * @return Fraction of cells that are non-zero.
+     */
+    public double density() {
+        long cells = (long) numRows() * numColumns;
+        return cells == 0 ? 0 : nonZeros() / (double) cells;
+    }
+
+    /**
+     * Incrementally builds a {@link SparseMatrix} one row at a time.
+     */
+    public static class Builder {
+
+        private int numColumns;
+        private int[] rowPointers = new int[1024];
+        private int[] columns = new int[16384];
+        private int[] values = new int[16384];
+        private int rows;
+        private int entries;
+
+        /**
+         * @param numColumns Initial number of columns; grows if larger term ids are added.
+         */
+        public Builder(int numColumns) {
+            this.numColumns = numColumns;
+        }
+
+        /**
+         * Appends a row counting the occurrences of each term id in the document.
+         *
+         * @param termIds Term ids of the document, in any order and with repeats.
+         * @return This builder.
+         */
+        public Builder addDocument(int[] termIds) {
+            int[] sorted = termIds.clone();
+            Arrays.sort(sorted);
+            int i = 0;
+            while (i < sorted.length) {
+                int column = sorted[i];
+                int count = 0;
+                while (i < sorted.length && sorted[i] == column) {
+                    count++;
+                    i++;
+                }
+                appendEntry(column, count);
+            }
+            return endRow();
+        }
+
+        /**
+         * Appends a row from parallel column/value arrays whose columns are strictly increasing.
+         *
+         * @param rowColumns Column of every entry.
+         * @param rowValues  Value of every entry; zeros are skipped.
+         * @param length     Number of entries to take from the arrays.
+         * @return This builder.
+         */
+        public Builder addRow(int[] rowColumns, int[] rowValues, int length) {
+            for (int i = 0; i < length; i++) {
+                if (rowValues[i] != 0) {
+                    appendEntry(rowColumns[i], rowValues[i]);
+                }
+            }
+            return endRow();
+        }
+
+        public SparseMatrix build() {
+            return new SparseMatrix(numColumns, Arrays.copyOf(rowPointers, rows + 1),
+                    Arrays.copyOf(columns, entries), Arrays.copyOf(values, entries));
+        }
+
+        private void appendEntry(int column, int value) {
+            if (entries == columns.length) {
+                columns = Arrays.copyOf(columns, entries * 2);
+                values = Arrays.copyOf(values, entries * 2);
+            }
+            columns[entries] = column;
+            values[entries] = value;
+            entries++;
+            numColumns = Math.max(numColumns, column + 1);
+        }
+
+        private Builder endRow() {
+            rows++;
+            if (rows == rowPointers.length) {
+                rowPointers = Arrays.copyOf(rowPointers, rows * 2);
+            }
+            rowPointers[rows] = entries;
+            return this;
+        }
+    }
+}
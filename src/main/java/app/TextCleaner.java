@@ -0,0 +1,228 @@
+package app;
+
+import java.util.Set;
+
+/**
+ * Single-pass text cleaner that strips URLs, lowercases, drops non-letters and removes stop words.
+ * <p>
+ * Produces the same output as the {@code removeUrls} → {@code tokenize} → {@code cleanText} chain of
+ * {@link c_preprocessing1}, but scans the characters once, compiles no regular expressions and only
+ * allocates the result string. Lowercasing follows the default (non-Turkic) locale rules used by
+ * {@link String#toLowerCase()}.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class TextCleaner {
+
+    // Top-level domains recognised by the URL pattern, in the order the pattern tries them
+    private static final String[] DOMAIN_SUFFIXES = {"com", "org", "net", "io", "gov", "edu", "info", "co", "uk"};
+
+    private final String[] stopWordTable;
+    private final int stopWordMask;
+
+    /**
+     * Creates a cleaner for the given stop words.
+     *
+     * @param stopWords Lowercase stop words to remove.
+     */
+    public TextCleaner(Set<String> stopWords) {
+        int capacity = Integer.highestOneBit(Math.max(4, stopWords.size() * 2 - 1)) << 1;
+        stopWordTable = new String[capacity];
+        stopWordMask = capacity - 1;
+        for (String word : stopWords) {
+            int slot = word.hashCode() & stopWordMask;
+            while (stopWordTable[slot] != null) {
+                slot = (slot + 1) & stopWordMask;
+            }
+            stopWordTable[slot] = word;
+        }
+    }
+
+    /**
+     * Cleans the given text.
+     *
+     * @param text The raw text string.
+     * @return Cleaned tokens separated by single spaces.
+     */
+    public String clean(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        clean(text, out);
+        return out.toString();
+    }
+
+    /**
+     * Cleans the given text, appending the cleaned tokens to {@code out}.
+     * Tokens are separated by single spaces, and from any content already in {@code out}.
+     *
+     * @param text The raw text.
+     * @param out  The builder receiving the cleaned tokens.
+     */
+    public void clean(CharSequence text, StringBuilder out) {
+        int n = text.length();
+        boolean separate = out.length() > 0;
+        int segmentMark = -1;     // Length of out before the current whitespace-delimited segment
+        int letterStart = -1;     // Position in out where the current segment's letters begin
+        int noDomainBefore = -1;  // The domain alternative is known to fail at every position below this
+
+        int p = 0;
+        while (p < n) {
+            char c = text.charAt(p);
+
+            if (isWhitespace(c)) {
+                if (segmentMark >= 0) {
+                    separate = endSegment(out, segmentMark, letterStart) || separate;
+                    segmentMark = -1;
+                }
+                p++;
+                continue;
+            }
+
+            if (segmentMark < 0) {
+                segmentMark = out.length();
+                if (separate) {
+                    out.append(' ');
+                }
+                letterStart = out.length();
+            }
+
+            // URLs never contain whitespace, so skipping one leaves segment boundaries untouched
+            int urlEnd = matchUrl(text, p, n, noDomainBefore);
+            if (urlEnd > 0) {
+                p = urlEnd;
+                continue;
+            }
+            if (isWordOrDash(c) && p >= noDomainBefore) {
+                noDomainBefore = wordRunEnd(text, p, n);
+            }
+
+            if (c >= 'a' && c <= 'z') {
+                out.append(c);
+            } else if (c >= 'A' && c <= 'Z') {
+                out.append((char) (c + ('a' - 'A')));
+            } else if (c == '\u0130') {
+                out.append('i'); // LATIN CAPITAL LETTER I WITH DOT ABOVE lowercases to "i" + combining dot
+            } else if (c == '\u212A') {
+                out.append('k'); // KELVIN SIGN lowercases to "k"
+            }
+            p++;
+        }
+
+        if (segmentMark >= 0) {
+            endSegment(out, segmentMark, letterStart);
+        }
+    }
+
+    /**
+     * Finishes a whitespace-delimited segment, discarding it if it has no letters or is a stop word.
+     *
+     * @return True if the segment was kept.
+     */
+    private boolean endSegment(StringBuilder out, int segmentMark, int letterStart) {
+        if (out.length() == letterStart || isStopWord(out, letterStart, out.length())) {
+            out.setLength(segmentMark);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Matches the URL pattern
+     * {@code https?://\S+|www\.[\w-]+\.[\w-]+|[\w-]+\.(com|org|net|io|gov|edu|info|co|uk)} at {@code p}.
+     *
+     * @return The end of the match, or -1 if no alternative matches at {@code p}.
+     */
+    private static int matchUrl(CharSequence text, int p, int n, int noDomainBefore) {
+        char c = text.charAt(p);
+
+        if (c == 'h' && regionMatches(text, p, n, "http")) {
+            int i = p + 4;
+            if (i < n && text.charAt(i) == 's') {
+                i++;
+            }
+            if (regionMatches(text, i, n, "://") && i + 3 < n && !isWhitespace(text.charAt(i + 3))) {
+                int end = i + 4;
+                while (end < n && !isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                return end;
+            }
+        }
+
+        if (c == 'w' && regionMatches(text, p, n, "www.")) {
+            int hostEnd = wordRunEnd(text, p + 4, n);
+            if (hostEnd > p + 4 && hostEnd < n && text.charAt(hostEnd) == '.') {
+                int end = wordRunEnd(text, hostEnd + 1, n);
+                if (end > hostEnd + 1) {
+                    return end;
+                }
+            }
+        }
+
+        if (isWordOrDash(c) && p >= noDomainBefore) {
+            int dot = wordRunEnd(text, p, n);
+            if (dot < n && text.charAt(dot) == '.') {
+                for (String suffix : DOMAIN_SUFFIXES) {
+                    if (regionMatches(text, dot + 1, n, suffix)) {
+                        return dot + 1 + suffix.length();
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of the run of {@code [\w-]} characters starting at {@code p}.
+     */
+    private static int wordRunEnd(CharSequence text, int p, int n) {
+        while (p < n && isWordOrDash(text.charAt(p))) {
+            p++;
+        }
+        return p;
+    }
+
+    private static boolean regionMatches(CharSequence text, int p, int n, String expected) {
+        if (p + expected.length() > n) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (text.charAt(p + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches the regex class {@code \s}, i.e. {@code [ \t\n\x0B\f\r]}.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /**
+     * Matches the regex class {@code [\w-]}, i.e. {@code [a-zA-Z_0-9-]}.
+     */
+    private static boolean isWordOrDash(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+
+    /**
+     * Looks up {@code chars[start, end)} in the stop-word table without creating a string.
+     */
+    private boolean isStopWord(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        int slot = hash & stopWordMask;
+        String candidate;
+        while ((candidate = stopWordTable[slot]) != null) {
+            if (candidate.length() == end - start && regionMatches(chars, start, end, candidate)) {
+                return true;
+            }
+            slot = (slot + 1) & stopWordMask;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,33 @@
+package app;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of {@link SparseDot}: weights are gathered a full vector of indices at a
+ * time and multiplied with the matching values in one fused multiply-add per vector. Needs
+ * {@code --add-modules jdk.incubator.vector}; only reached through {@link SparseDot}.
+ */
+final class VectorizedSparseDot {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorizedSparseDot() {
+    }
+
+    static float dot(float[] weights, int[] indices, float[] values, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector gathered = FloatVector.fromArray(SPECIES, weights, 0, indices, i);
+            sum = gathered.fma(FloatVector.fromArray(SPECIES, values, i), sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += weights[indices[i]] * values[i];
+        }
+        return result;
+    }
+}
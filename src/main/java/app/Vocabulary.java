@@ -0,0 +1,137 @@
+package app;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Term dictionary assigning each distinct term a stable integer id in order of first appearance.
+ * <p>
+ * Terms are indexed in an open-addressing hash table with linear probing over parallel arrays, so
+ * both {@link #add(String)} and {@link #indexOf(String)} run in expected O(1) without boxing.
+ * Not thread-safe.
+ */
+public final class Vocabulary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private String[] keys;
+    private int[] ids;
+    private int mask;
+    private String[] terms;
+    private int size;
+
+    public Vocabulary() {
+        keys = new String[INITIAL_CAPACITY];
+        ids = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+        terms = new String[INITIAL_CAPACITY / 2];
+    }
+
+    /**
+     * Creates a vocabulary holding the given terms, with ids equal to their list positions.
+     *
+     * @param terms Distinct terms in id order.
+     */
+    public Vocabulary(List<String> terms) {
+        this();
+        for (String term : terms) {
+            add(term);
+        }
+    }
+
+    /**
+     * Returns the id of a term, assigning the next free id if the term is new.
+     *
+     * @param term The term.
+     * @return Its id.
+     */
+    public int add(String term) {
+        int slot = slot(term);
+        while (keys[slot] != null) {
+            if (keys[slot].equals(term)) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = size++;
+        keys[slot] = term;
+        ids[slot] = id;
+        if (id == terms.length) {
+            terms = Arrays.copyOf(terms, terms.length * 2);
+        }
+        terms[id] = term;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of a term.
+     *
+     * @param term The term.
+     * @return Its id, or -1 if the term is not in the vocabulary.
+     */
+    public int indexOf(String term) {
+        int slot = slot(term);
+        while (keys[slot] != null) {
+            if (keys[slot].equals(term)) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id A term id.
+     * @return The term with that id.
+     */
+    public String term(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No term with id " + id);
+        }
+        return terms[id];
+    }
+
+    /**
+     * @return Number of distinct terms.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return All terms, in id order.
+     */
+    public List<String> terms() {
+        return Arrays.asList(Arrays.copyOf(terms, size));
+    }
+
+    private int slot(String term) {
+        int hash = term.hashCode() * 0x9E3779B9; // Fibonacci hashing spreads String's weak low bits
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new String[capacity];
+        ids = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+}
@@ -1,58 +1,204 @@
 package app;
 
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
-import com.opencsv.exceptions.CsvException;
 
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class b_combineCSV {
+
+    // Maximum number of labeled rows buffered between the readers and the writer
+    private static final int QUEUE_CAPACITY = 1024;
+
+    // Buffer size of the output writer; inputs are memory-mapped by MappedCsvReader
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    // Marker pushed by a reader once its source file is exhausted
+    static final String[] END_OF_SOURCE = new String[0];
+
+    /**
+     * Merges labeled news files into a single CSV file.
+     * <p>
+     * Without arguments Fake.csv and True.csv are merged into CombinedNews.csv. Otherwise every
+     * argument of the form {@code label=path} adds an input file, and {@code --output=path}
+     * overrides the output file.
+     *
+     * @param args Optional labeled inputs and output path.
+     */
     public static void main(String[] args) {
-        String fakeNewsFilePath = "Fake.csv";
-        String trueNewsFilePath = "True.csv";
         String outputFilePath = "CombinedNews.csv"; // New file to save combined data
+        List<LabeledInput> labeledInputs = new ArrayList<>();
 
-        List<String[]> combinedRecords = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--output=")) {
+                outputFilePath = arg.substring("--output=".length());
+            } else if (arg.indexOf('=') > 0) {
+                int separator = arg.indexOf('=');
+                labeledInputs.add(new LabeledInput(arg.substring(0, separator), arg.substring(separator + 1)));
+            } else {
+                System.err.println("Ignoring argument (expected label=path or --output=path): " + arg);
+            }
+        }
+        if (labeledInputs.isEmpty()) {
+            labeledInputs.add(new LabeledInput("fake", "Fake.csv"));
+            labeledInputs.add(new LabeledInput("true", "True.csv"));
+        }
 
         try {
-            // Read fake news data
-            CSVReader fakeReader = new CSVReader(new FileReader(fakeNewsFilePath));
-            List<String[]> fakeRecords = fakeReader.readAll();
-            fakeReader.close();
-
-            // Add a label to each fake news record and add to combined list
-            for (String[] record : fakeRecords) {
-                String[] labeledRecord = new String[record.length + 1];
-                System.arraycopy(record, 0, labeledRecord, 0, record.length);
-                labeledRecord[record.length] = "fake";  // Adding the label "fake"
-                combinedRecords.add(labeledRecord);
+            long rows = mergeStreaming(labeledInputs, outputFilePath);
+            System.out.println("Combined " + rows + " rows have been written to " + outputFilePath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Merge interrupted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams every labeled input file into the output file, appending the label as the last column.
+     * <p>
+     * Each input is read row by row on its own thread and handed to the writer through a bounded
+     * queue, so memory use depends on {@link #QUEUE_CAPACITY} rather than on the size of the corpus.
+     * Rows of one input keep their relative order; rows of different inputs may be interleaved.
+     * Several inputs may carry the same label.
+     *
+     * @param labeledInputs  The CSV files to merge, each with the label of its rows.
+     * @param outputFilePath The path where the combined CSV file should be written.
+     * @return The number of rows written.
+     * @throws IOException          If any input cannot be read or the output cannot be written.
+     * @throws InterruptedException If the merge is interrupted while waiting on the queue.
+     */
+    public static long mergeStreaming(List<LabeledInput> labeledInputs, String outputFilePath)
+            throws IOException, InterruptedException {
+        BlockingQueue<String[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        ExecutorService readers = Executors.newFixedThreadPool(Math.max(1, labeledInputs.size()));
+        List<Future<Long>> results = new ArrayList<>();
+        long written = 0;
+
+        try {
+            for (LabeledInput input : labeledInputs) {
+                results.add(readers.submit(() -> readLabeled(input.path(), input.label(), queue)));
+            }
+
+            PipelineMetrics.Stage stage = PipelineMetrics.startStage("combine");
+            long writeNanos = 0;
+            try (CSVWriter writer = new CSVWriter(new BufferedWriter(new FileWriter(outputFilePath), IO_BUFFER_SIZE))) {
+                int finishedSources = 0;
+                while (finishedSources < results.size()) {
+                    String[] record = queue.take();
+                    if (record == END_OF_SOURCE) {
+                        finishedSources++;
+                    } else {
+                        long writeStart = System.nanoTime();
+                        writer.writeNext(record);
+                        writeNanos += System.nanoTime() - writeStart;
+                        written++;
+                    }
+                }
             }
+            stage.stop(written, writeNanos);
 
-            // Read true news data
-            CSVReader trueReader = new CSVReader(new FileReader(trueNewsFilePath));
-            List<String[]> trueRecords = trueReader.readAll();
-            trueReader.close();
-
-            // Add a label to each true news record and add to combined list
-            for (String[] record : trueRecords) {
-                String[] labeledRecord = new String[record.length + 1];
-                System.arraycopy(record, 0, labeledRecord, 0, record.length);
-                labeledRecord[record.length] = "true";  // Adding the label "true"
-                combinedRecords.add(labeledRecord);
+            // Surface any reader failure once all sources have signalled completion
+            for (Future<Long> result : results) {
+                result.get();
             }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to read input: " + cause.getMessage(), cause);
+        } finally {
+            // Unblocks readers still waiting on a full queue if the writer failed
+            readers.shutdownNow();
+        }
+        return written;
+    }
 
-            CSVWriter writer = new CSVWriter(new FileWriter(outputFilePath));
-            writer.writeAll(combinedRecords);
-            writer.close();
+    /**
+     * Reads one CSV file row by row with a {@link MappedCsvReader} and pushes each row, with the label
+     * appended, onto the queue.
+     * The end-of-source marker is pushed even if reading fails, unless the reader is interrupted: that
+     * is how {@code shutdownNow} stops it once the consumer has failed, and nobody would take the
+     * marker off a full queue.
+     *
+     * @param filePath The path to the CSV file.
+     * @param label    The label appended to every row.
+     * @param queue    The queue shared with the writer.
+     * @return The number of rows read.
+     */
+    static long readLabeled(String filePath, String label, BlockingQueue<String[]> queue)
+            throws IOException, InterruptedException {
+        long count = 0;
+        long waitNanos = 0;
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("ingest");
+        long start = System.nanoTime();
+        boolean interrupted = false;
+        try (MappedCsvReader reader = new MappedCsvReader(Paths.get(filePath))) {
+            MappedCsvReader.Row record;
+            while ((record = reader.readNext()) != null) {
+                String[] labeledRecord = new String[record.size() + 1];
+                for (int i = 0; i < record.size(); i++) {
+                    labeledRecord[i] = record.get(i);
+                }
+                labeledRecord[record.size()] = label;
+                long putStart = System.nanoTime();
+                queue.put(labeledRecord);
+                waitNanos += System.nanoTime() - putStart;
+                count++;
+            }
+        } catch (InterruptedException e) {
+            interrupted = true; // Throwing cleared the interrupt flag
+            throw e;
+        } finally {
+            if (!interrupted && !Thread.currentThread().isInterrupted()) {
+                queue.put(END_OF_SOURCE);
+            }
+        }
+        // Time blocked on a full queue is spent waiting for the consumer, not reading
+        stage.stop(count, System.nanoTime() - start - waitNanos);
+        return count;
+    }
 
-            System.out.println("Combined data has been written to " + outputFilePath);
+    /**
+     * A CSV file whose rows all carry the same label.
+     */
+    public static class LabeledInput {
 
-        } catch (IOException | CsvException e) {
-            e.printStackTrace();
+        private final String label;
+        private final String path;
+
+        /**
+         * @param label The label appended to every row of the file.
+         * @param path  The path to the CSV file.
+         */
+        public LabeledInput(String label, String path) {
+            this.label = label;
+            this.path = path;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public String path() {
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            return label + "=" + path;
         }
     }
 }
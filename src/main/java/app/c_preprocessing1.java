@@ -1,32 +1,127 @@
 package app;
 
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
-import com.opencsv.exceptions.CsvException;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.CoreDocument;
 import edu.stanford.nlp.pipeline.CoreSentence;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class c_preprocessing1 {
 
     // Set of stop words for removal, loaded dynamically from a file
     private static Set<String> stopWords = new HashSet<>();
 
-    // Initialize Stanford CoreNLP pipeline
+    // Stanford CoreNLP configuration shared by every pipeline
     private static final Properties props = new Properties();
-    private static final StanfordCoreNLP pipeline;
 
     static {
         props.setProperty("annotators", "tokenize,ssplit,pos,lemma");
-        pipeline = new StanfordCoreNLP(props);
+    }
+
+    // First pipeline construction, which loads the POS and lemma models into CoreNLP's shared annotator
+    // pool; run by warmUpInBackground() or by the first thread that needs a pipeline, whichever comes first
+    private static final FutureTask<StanfordCoreNLP> modelLoad = new FutureTask<>(() -> new StanfordCoreNLP(props));
+
+    // One pipeline per worker thread, since StanfordCoreNLP annotation is not safe to share; built on
+    // first use, so stages that never lemmatize with CoreNLP never load its models
+    private static final ThreadLocal<StanfordCoreNLP> pipeline = ThreadLocal.withInitial(c_preprocessing1::newPipeline);
+
+    // Version of the cleaning and lemmatization code, part of the cache fingerprint; bump it whenever
+    // their output changes so cached records of older versions are no longer used
+    private static final int PREPROCESSING_VERSION = 1;
+
+    // Default number of records handed to a worker at a time
+    static final int DEFAULT_CHUNK_SIZE = 256;
+
+    // Maximum number of distinct tokens kept by the lemma cache
+    private static final int LEMMA_CACHE_CAPACITY = 200_000;
+
+    // Token -> lemma cache shared by all workers in CACHED mode
+    private static final LemmaCache lemmaCache = new LemmaCache(LEMMA_CACHE_CAPACITY);
+
+    // Dictionary and rule based lemmatizer used in FAST mode
+    private static final FastLemmatizer fastLemmatizer = new FastLemmatizer();
+
+    static {
+        PipelineMetrics.cache("lemma", lemmaCache::hits, lemmaCache::misses);
+    }
+
+    /**
+     * How cleaned text is lemmatized.
+     */
+    public enum LemmaMode {
+        /** Full tokenize/ssplit/pos/lemma CoreNLP pipeline over each text. */
+        PIPELINE,
+        /** CoreNLP lemmas per token, memoized in a bounded cache. */
+        CACHED,
+        /** Precomputed dictionary with rule-based fallback; no POS tagging. */
+        FAST
+    }
+
+    private final int workers;
+    private final int chunkSize;
+    private final LemmaMode lemmaMode;
+    private final PreprocessingCache cache;
+
+    /**
+     * Creates a preprocessor using one worker per available processor.
+     */
+    public c_preprocessing1() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a preprocessor with a fixed worker pool.
+     *
+     * @param workers   Number of worker threads, each with its own CoreNLP pipeline.
+     * @param chunkSize Number of records processed by a worker per task.
+     */
+    public c_preprocessing1(int workers, int chunkSize) {
+        this(workers, chunkSize, LemmaMode.PIPELINE);
+    }
+
+    /**
+     * Creates a preprocessor with a fixed worker pool and lemmatization mode.
+     *
+     * @param workers   Number of worker threads, each with its own CoreNLP pipeline.
+     * @param chunkSize Number of records processed by a worker per task.
+     * @param lemmaMode How cleaned text is lemmatized.
+     */
+    public c_preprocessing1(int workers, int chunkSize, LemmaMode lemmaMode) {
+        this(workers, chunkSize, lemmaMode, null);
+    }
+
+    /**
+     * Creates a preprocessor that reuses the cleaned and lemmatized text of articles seen before.
+     *
+     * @param workers   Number of worker threads, each with its own CoreNLP pipeline.
+     * @param chunkSize Number of records processed by a worker per task.
+     * @param lemmaMode How cleaned text is lemmatized.
+     * @param cache     Cache opened with {@link #configurationFingerprint(LemmaMode)}, or null for none.
+     */
+    public c_preprocessing1(int workers, int chunkSize, LemmaMode lemmaMode, PreprocessingCache cache) {
+        if (workers < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("workers and chunkSize must be positive");
+        }
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.lemmaMode = lemmaMode;
+        this.cache = cache;
     }
 
     public static void main(String[] args) {
@@ -34,21 +129,232 @@ public class c_preprocessing1 {
         String inputFilePath = "CombinedNews.csv";
         String outputFilePath = "PreprocessedNews.csv";
         String stopWordsFilePath = "stopwords.txt"; // Path to stop words file
+        int workers = Runtime.getRuntime().availableProcessors();
+        LemmaMode lemmaMode = LemmaMode.PIPELINE;
+        String lemmaDictionaryPath = null;
+        String cachePath = "PreprocessedNews.cache";
+        String dedupeIndexPath = "PreprocessedNews.lsh";
+        double dedupeThreshold = 0; // Deduplication disabled
+
+        for (String arg : args) {
+            if (arg.startsWith("--workers=")) {
+                workers = Integer.parseInt(arg.substring("--workers=".length()));
+            } else if (arg.startsWith("--lemma=")) {
+                lemmaMode = LemmaMode.valueOf(arg.substring("--lemma=".length()).toUpperCase());
+            } else if (arg.startsWith("--lemma-dict=")) {
+                lemmaDictionaryPath = arg.substring("--lemma-dict=".length());
+            } else if (arg.startsWith("--cache=")) {
+                cachePath = arg.substring("--cache=".length());
+            } else if (arg.equals("--no-cache")) {
+                cachePath = null;
+            } else if (arg.equals("--dedupe")) {
+                dedupeThreshold = MinHashIndex.DEFAULT_THRESHOLD;
+            } else if (arg.startsWith("--dedupe=")) {
+                dedupeThreshold = Double.parseDouble(arg.substring("--dedupe=".length()));
+            }
+        }
+
+        // Load the CoreNLP models while the input is read
+        if (lemmaMode != LemmaMode.FAST) {
+            warmUpInBackground();
+        }
 
         // Step 1: Load stop words from file
         loadStopWordsFromFile(stopWordsFilePath);
+        if (lemmaDictionaryPath != null) {
+            loadLemmaDictionaryFromFile(lemmaDictionaryPath);
+        }
 
         // Step 2: Load data
         List<String[]> records = readCSV(inputFilePath);
+        MinHashIndex nearDuplicates = null;
+        if (dedupeThreshold > 0) {
+            nearDuplicates = new MinHashIndex(stopWords, dedupeThreshold);
+            records = removeNearDuplicates(records, nearDuplicates);
+        }
 
-        // Step 3: Preprocess data
-        c_preprocessing1 preprocessor = new c_preprocessing1();
+        // Step 3: Preprocess data, skipping articles whose output is already in the cache
+        PreprocessingCache cache = cachePath == null ? null : openCache(cachePath, lemmaMode);
+        c_preprocessing1 preprocessor = new c_preprocessing1(workers, DEFAULT_CHUNK_SIZE, lemmaMode, cache);
         List<String[]> preprocessedRecords = preprocessor.preprocessData(records);
+        if (cache != null) {
+            System.out.println("Preprocessing cache: " + cache);
+            closeCache(cache);
+        }
 
         // Step 4: Save preprocessed data to a new CSV file
         saveCSV(preprocessedRecords, outputFilePath);
 
         System.out.println("Preprocessing completed. Data saved to " + outputFilePath);
+        if (nearDuplicates != null) {
+            try {
+                nearDuplicates.save(Paths.get(dedupeIndexPath));
+                System.out.println("Near-duplicate index saved to " + dedupeIndexPath);
+            } catch (IOException e) {
+                System.err.println("Error saving near-duplicate index: " + e.getMessage());
+            }
+        }
+        if (lemmaMode == LemmaMode.CACHED) {
+            System.out.println("Lemma cache: " + lemmaCache);
+        }
+    }
+
+    /**
+     * Drops articles whose text is a near-duplicate of an earlier article, keeping the first
+     * of every group, so reposted stories are trained on once and cannot end up in different
+     * cross-validation folds. Kept articles are added to the index.
+     *
+     * @param records The raw data records, label in the fifth column.
+     * @param index   The index of kept articles, normally empty.
+     * @return The kept records, in input order.
+     */
+    static List<String[]> removeNearDuplicates(List<String[]> records, MinHashIndex index) {
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("dedupe");
+        List<String[]> kept = new ArrayList<>(records.size());
+        int conflicting = 0;
+        for (String[] record : records) {
+            // Incomplete records are left to removeMissingValues
+            MinHashIndex.Match duplicate = record.length < 5 || record[1] == null
+                    ? null : index.addIfNew(record[1], record[4]);
+            if (duplicate == null) {
+                kept.add(record);
+            } else if (!duplicate.label().equals(record[4])) {
+                conflicting++;
+            }
+        }
+        stage.stop(records.size());
+        System.out.println("Near-duplicates removed: " + (records.size() - kept.size()) + " of " + records.size()
+                + " records (" + conflicting + " labeled differently from the kept article)");
+        return kept;
+    }
+
+    /**
+     * Starts loading the CoreNLP models on a daemon thread, so the load overlaps reading the input
+     * instead of delaying the first record. Workers that need a pipeline before the load is done wait
+     * for it rather than loading the models again. Does nothing if the models are already loading or
+     * loaded, or if {@code -Dapp.warmup=false} is set.
+     */
+    static void warmUpInBackground() {
+        if (!Boolean.parseBoolean(System.getProperty("app.warmup", "true")) || modelLoad.isDone()) {
+            return;
+        }
+        Thread warmUp = new Thread(modelLoad, "corenlp-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    /**
+     * Creates the CoreNLP pipeline of the calling thread once the shared models are loaded.
+     *
+     * @return A new pipeline.
+     */
+    private static StanfordCoreNLP newPipeline() {
+        modelLoad.run(); // Loads the models here unless the warm-up thread already is or has
+        try {
+            modelLoad.get();
+            // Built from the pooled annotators, so the models are not loaded again
+            return new StanfordCoreNLP(props);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading CoreNLP models", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error loading CoreNLP models", e.getCause());
+        }
+    }
+
+    /**
+     * Opens the preprocessing cache for the current stop words and lemma configuration and registers
+     * its hit counts with {@link PipelineMetrics}.
+     *
+     * @param filePath  The cache file.
+     * @param lemmaMode How cleaned text is lemmatized.
+     * @return The cache, or null if it cannot be opened.
+     */
+    static PreprocessingCache openCache(String filePath, LemmaMode lemmaMode) {
+        try {
+            PreprocessingCache cache = new PreprocessingCache(Paths.get(filePath), configurationFingerprint(lemmaMode));
+            PipelineMetrics.cache("preprocess", cache::hits, cache::misses);
+            return cache;
+        } catch (IOException e) {
+            System.err.println("Error opening preprocessing cache, preprocessing every record: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Compacts the cache if most of its file is superseded or stale, and closes it.
+     *
+     * @param cache The cache opened by {@link #openCache(String, LemmaMode)}.
+     */
+    static void closeCache(PreprocessingCache cache) {
+        try (PreprocessingCache closing = cache) {
+            if (closing.isWasteful()) {
+                closing.compact();
+                System.out.println("Preprocessing cache compacted to " + closing.size() + " entries");
+            }
+        } catch (IOException e) {
+            System.err.println("Error compacting preprocessing cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fingerprints everything besides the raw title and text that determines the preprocessed output:
+     * the code version, the lemma mode and CoreNLP configuration, the stop words and, in
+     * {@link LemmaMode#FAST} mode, the lemma dictionary.
+     *
+     * @param lemmaMode How cleaned text is lemmatized.
+     * @return The fingerprint under which {@link PreprocessingCache} entries are stored.
+     */
+    static long configurationFingerprint(LemmaMode lemmaMode) {
+        StringBuilder configuration = new StringBuilder();
+        configuration.append(PREPROCESSING_VERSION).append('\n').append(lemmaMode).append('\n');
+        if (lemmaMode == LemmaMode.FAST) {
+            configuration.append(fastLemmatizer.dictionaryFingerprint()).append('\n');
+        } else {
+            configuration.append(props.getProperty("annotators")).append('\n')
+                    .append(StanfordCoreNLP.class.getPackage().getImplementationVersion()).append('\n');
+        }
+        for (String stopWord : new TreeSet<>(stopWords)) {
+            configuration.append(stopWord).append('\n');
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(configuration.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    /**
+     * Returns the lemma cache used in {@link LemmaMode#CACHED} mode.
+     *
+     * @return The shared lemma cache.
+     */
+    static LemmaCache getLemmaCache() {
+        return lemmaCache;
+    }
+
+    /**
+     * Loads a token/lemma dictionary for {@link LemmaMode#FAST} mode.
+     *
+     * @param filePath The path to the tab-separated dictionary file.
+     */
+    static void loadLemmaDictionaryFromFile(String filePath) {
+        try {
+            fastLemmatizer.loadDictionary(filePath);
+            System.out.println("Lemma dictionary loaded successfully: " + fastLemmatizer.dictionarySize() + " entries");
+        } catch (IOException e) {
+            System.err.println("Error loading lemma dictionary from file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the stop words loaded by {@link #loadStopWordsFromFile(String)}.
+     *
+     * @return The current stop-word set.
+     */
+    static Set<String> getStopWords() {
+        return stopWords;
     }
 
     /**
@@ -56,7 +362,7 @@ public class c_preprocessing1 {
      *
      * @param filePath The path to the stop words file.
      */
-    private static void loadStopWordsFromFile(String filePath) {
+    static void loadStopWordsFromFile(String filePath) {
         try {
             List<String> lines = Files.readAllLines(Paths.get(filePath));
             for (String line : lines) {
@@ -65,7 +371,7 @@ public class c_preprocessing1 {
                     stopWords.add(trimmedLine);
                 }
             }
-            System.out.println("Stop words loaded successfully: " + stopWords);
+            System.out.println("Stop words loaded successfully: " + stopWords.size() + " words");
         } catch (IOException e) {
             System.err.println("Error loading stop words from file: " + e.getMessage());
         }
@@ -79,9 +385,9 @@ public class c_preprocessing1 {
      */
     public static List<String[]> readCSV(String filePath) {
         List<String[]> records = new ArrayList<>();
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            records = reader.readAll();
-        } catch (IOException | CsvException e) {
+        try {
+            records = MappedCsvReader.readAll(filePath);
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return records;
@@ -108,15 +414,19 @@ public class c_preprocessing1 {
      * @return List of preprocessed data records.
      */
     public List<String[]> preprocessData(List<String[]> records) {
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("preprocess");
+        int inputRecords = records.size();
+
         // Step 1: Handle missing values
         records = removeMissingValues(records);
 
-        // Step 2: Clean text data (title and text columns)
-        records = cleanRecords(records);
+        // Step 2: Clean text data (title and text columns), reusing the cached output of unchanged articles
+        records = cache == null ? cleanRecords(records) : cleanRecordsCached(records);
 
         // Step 3: Add additional features (e.g., text length)
         records = addTextLengthFeature(records);
 
+        stage.stop(inputRecords);
         return records;
     }
 
@@ -141,24 +451,96 @@ public class c_preprocessing1 {
     /**
      * Cleans the text data by removing URLs, converting to lowercase, removing special characters,
      * tokenizing, removing stop words, and applying lemmatization.
+     * <p>
+     * Records are split into chunks of {@code chunkSize} and cleaned on a pool of {@code workers}
+     * threads. Chunks are reassembled in submission order, so the output order matches the input.
      *
      * @param records The raw data records.
      * @return List of records with cleaned text.
      */
     private List<String[]> cleanRecords(List<String[]> records) {
-        List<String[]> cleanedRecords = new ArrayList<>();
-        for (String[] record : records) {
-            // Remove URLs from title and text
-            String cleanedTitle = removeUrls(record[0]);
-            String cleanedText = removeUrls(record[1]);
+        TextCleaner cleaner = new TextCleaner(stopWords);
+        if (workers == 1 || records.size() <= chunkSize) {
+            return cleanChunk(records, cleaner);
+        }
 
-            // Tokenize title and text
-            List<String> titleTokens = tokenize(cleanedTitle);
-            List<String> textTokens = tokenize(cleanedText);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<List<String[]>>> chunks = new ArrayList<>();
+            for (int start = 0; start < records.size(); start += chunkSize) {
+                List<String[]> chunk = records.subList(start, Math.min(start + chunkSize, records.size()));
+                chunks.add(pool.submit(() -> cleanChunk(chunk, cleaner)));
+            }
 
-            // Clean title and text using tokens (removing stop words and special characters)
-            cleanedTitle = cleanText(titleTokens);
-            cleanedText = cleanText(textTokens);
+            List<String[]> cleanedRecords = new ArrayList<>(records.size());
+            for (Future<List<String[]>> chunk : chunks) {
+                cleanedRecords.addAll(chunk.get());
+            }
+            return cleanedRecords;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Preprocessing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Preprocessing worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Cleans records through the preprocessing cache: records whose raw title and text are cached take
+     * the cached output, and only the others go through {@link #cleanRecords(List)}, after which their
+     * output is appended to the cache.
+     *
+     * @param records The raw data records.
+     * @return List of records with cleaned text, in input order.
+     */
+    private List<String[]> cleanRecordsCached(List<String[]> records) {
+        String[][] cleaned = new String[records.size()][];
+        List<Integer> missPositions = new ArrayList<>();
+        List<PreprocessingCache.Key> missKeys = new ArrayList<>();
+        List<String[]> missRecords = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            String[] record = records.get(i);
+            PreprocessingCache.Key key = PreprocessingCache.keyOf(record[0], record[1]);
+            String[] cached = cache.get(key);
+            if (cached != null) {
+                cleaned[i] = new String[]{cached[0], cached[1], record[2], record[3], record[4]};
+            } else {
+                missPositions.add(i);
+                missKeys.add(key);
+                missRecords.add(record);
+            }
+        }
+
+        List<String[]> fresh = cleanRecords(missRecords);
+        List<String[]> freshValues = new ArrayList<>(fresh.size());
+        for (int i = 0; i < fresh.size(); i++) {
+            cleaned[missPositions.get(i)] = fresh.get(i);
+            freshValues.add(new String[]{fresh.get(i)[0], fresh.get(i)[1]});
+        }
+        try {
+            cache.putAll(missKeys, freshValues);
+        } catch (IOException e) {
+            // The output is still correct; the records are just preprocessed again next time
+            System.err.println("Error appending to preprocessing cache: " + e.getMessage());
+        }
+        return Arrays.asList(cleaned);
+    }
+
+    /**
+     * Cleans a contiguous chunk of records on the calling thread.
+     *
+     * @param records The raw data records of the chunk.
+     * @param cleaner The single-pass cleaner for URLs, case, special characters and stop words.
+     * @return List of records with cleaned text, in input order.
+     */
+    private List<String[]> cleanChunk(List<String[]> records, TextCleaner cleaner) {
+        List<String[]> cleanedRecords = new ArrayList<>(records.size());
+        for (String[] record : records) {
+            // Remove URLs, special characters and stop words from title and text in one pass
+            String cleanedTitle = cleaner.clean(record[0]);
+            String cleanedText = cleaner.clean(record[1]);
 
             // Apply lemmatization
             String lemmatizedTitle = lemmatizeText(cleanedTitle);
@@ -172,13 +554,24 @@ public class c_preprocessing1 {
         return cleanedRecords;
     }
 
+    /**
+     * Cleans text with the original regex-based chain of {@link #removeUrls}, {@link #tokenize} and
+     * {@link #cleanText}. Kept as the reference behaviour that {@link TextCleaner} must reproduce.
+     *
+     * @param text The raw text string.
+     * @return Cleaned text string.
+     */
+    String referenceClean(String text) {
+        return cleanText(tokenize(removeUrls(text)));
+    }
+
     /**
      * Removes URLs from the given text.
      *
      * @param text The input text string.
      * @return The text without URLs.
      */
-    private String removeUrls(String text) {
+    String removeUrls(String text) {
         // Regular expression pattern to detect URLs in the text
         String urlPattern = "(https?://\\S+|www\\.[\\w-]+\\.[\\w-]+|[\\w-]+\\.(com|org|net|io|gov|edu|info|co|uk))";
         return text.replaceAll(urlPattern, "").trim(); // Remove all URLs from the text
@@ -217,15 +610,76 @@ public class c_preprocessing1 {
     }
 
     /**
-     * Applies lemmatization to the given text.
+     * Applies lemmatization to the given text using the configured {@link LemmaMode}, recording its
+     * latency in {@link PipelineMetrics#LEMMATIZATION}.
      *
      * @param text The cleaned text string.
      * @return The lemmatized version of the text.
      */
     private String lemmatizeText(String text) {
+        PipelineEvents.LemmatizationEvent event = new PipelineEvents.LemmatizationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        String lemmatized;
+        switch (lemmaMode) {
+            case CACHED:
+                lemmatized = lemmatizeCached(text);
+                break;
+            case FAST:
+                lemmatized = fastLemmatizer.lemmatizeText(text);
+                break;
+            default:
+                lemmatized = lemmatizeWithPipeline(text);
+        }
+        PipelineMetrics.LEMMATIZATION.record(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.mode = lemmaMode.name();
+            event.characters = text.length();
+            event.commit();
+        }
+        return lemmatized;
+    }
+
+    /**
+     * Lemmatizes each token of the cleaned text through the lemma cache. A cache miss runs the token
+     * alone through the CoreNLP pipeline, so its POS tag is chosen without sentence context.
+     *
+     * @param text The cleaned text string.
+     * @return The lemmatized version of the text.
+     */
+    private String lemmatizeCached(String text) {
+        StringBuilder lemmatizedText = new StringBuilder(text.length());
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf(' ', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            if (end > start) {
+                String lemma = lemmaCache.get(text.substring(start, end), this::lemmatizeWithPipeline);
+                if (!lemma.isEmpty()) {
+                    if (lemmatizedText.length() > 0) {
+                        lemmatizedText.append(' ');
+                    }
+                    lemmatizedText.append(lemma);
+                }
+            }
+            start = end + 1;
+        }
+        return lemmatizedText.toString();
+    }
+
+    /**
+     * Lemmatizes the given text with the full CoreNLP pipeline of the calling thread.
+     *
+     * @param text The cleaned text string.
+     * @return The lemmatized version of the text.
+     */
+    private String lemmatizeWithPipeline(String text) {
         StringBuilder lemmatizedText = new StringBuilder();
         CoreDocument document = new CoreDocument(text);
-        pipeline.annotate(document);
+        pipeline.get().annotate(document);
         for (CoreSentence sentence : document.sentences()) {
             for (CoreLabel token : sentence.tokens()) {
                 lemmatizedText.append(token.lemma()).append(" ");
@@ -1,71 +1,231 @@
 package app;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import weka.core.Utils;
+
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class d_boWords {
 
+    /**
+     * Builds the Bag-of-Words feature matrix from the preprocessed news.
+     * <p>
+     * The matrix is written in the binary {@link FeatureMatrixFile} format, which {@code e_model}
+     * memory-maps. Passing {@code --arff} additionally writes sparse ARFF, and {@code --dense-csv}
+     * the dense CSV layout used previously. With {@code --hash-buckets=n} tokens are hashed into n
+     * columns by a {@link FeatureHasher} instead of being collected into a vocabulary;
+     * {@code --signed-hash} gives every token a hash-derived sign, which the naive Bayes models cannot
+     * use (see {@link FeatureHasher}).
+     *
+     * @param args Optional input path (default PreprocessedNews.csv) and flags.
+     */
     public static void main(String[] args) {
-        // Step 1: Read preprocessed CSV file
-        String inputFilePath = "PreprocessedNewsTemp.csv"; // Input file path
-        List<String[]> records = readCSV(inputFilePath);
-
-        // Step 2: Create vocabulary with a frequency count
-        Set<String> vocabularySet = new HashSet<>(); // Use a Set to ensure uniqueness
-        for (String[] record : records) {
-            String content = record[0] + " " + record[1]; // Combine title and text columns
-            String[] tokens = content.split("\\s+"); // Tokenize content
-            for (String token : tokens) {
-                token = token.toLowerCase(); // Convert to lowercase for uniformity
-                if (!token.isEmpty()) {
-                    vocabularySet.add(token); // Add unique tokens to the set
-                }
+        boolean writeArff = false;
+        boolean writeDenseCsv = false;
+        int hashBuckets = 0;
+        boolean signedHash = false;
+        String inputFilePath = "PreprocessedNews.csv"; // Output of c_preprocessing1
+        for (String arg : args) {
+            if (arg.equals("--arff")) {
+                writeArff = true;
+            } else if (arg.equals("--dense-csv")) {
+                writeDenseCsv = true;
+            } else if (arg.startsWith("--hash-buckets=")) {
+                hashBuckets = Integer.parseInt(arg.substring("--hash-buckets=".length()));
+            } else if (arg.equals("--signed-hash")) {
+                signedHash = true;
+            } else if (arg.equals("--unsigned-hash")) {
+                signedHash = false; // The default, still accepted
+            } else {
+                inputFilePath = arg;
             }
         }
-        List<String> vocabulary = new ArrayList<>(vocabularySet); // Convert set to list for ordered access
-
-        // Step 3: Construct the BoW matrix
-        int[][] bowMatrix = new int[records.size()][vocabulary.size()];
-
-        for (int i = 0; i < records.size(); i++) {
-            String content = records.get(i)[0] + " " + records.get(i)[1]; // Combine title and text columns
-            String[] tokens = content.split("\\s+"); // Tokenize content
-            for (String token : tokens) {
-                token = token.toLowerCase(); // Ensure case uniformity
-                if (vocabularySet.contains(token)) {
-                    int columnIndex = vocabulary.indexOf(token);
-                    bowMatrix[i][columnIndex]++;
+
+        // Steps 1 and 2: Stream the preprocessed CSV file into the sparse BoW matrix, storing only non-zero counts
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("vectorize");
+        FeatureHasher hasher = hashBuckets > 0 ? new FeatureHasher(hashBuckets, signedHash) : null;
+        Vocabulary vocabulary = new Vocabulary();
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(hasher != null ? hasher.numBuckets() : 0);
+        List<String> labels = new ArrayList<>();
+        try (MappedCsvReader reader = new MappedCsvReader(Paths.get(inputFilePath))) {
+            for (MappedCsvReader.Row record : reader) {
+                if (hasher != null) {
+                    // Hash every document straight into its row; no vocabulary is collected
+                    FeatureHasher.Row row = hasher.hashRecord(record.toArray());
+                    builder.addRow(row.columns(), row.values(), row.length());
+                } else {
+                    // Convert every document to term ids, growing the vocabulary in the same pass
+                    builder.addDocument(toTermIds(record.field(0), record.field(1), vocabulary));
                 }
+                labels.add(record.get(record.size() - 2)); // Classification label
             }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error reading the CSV file: " + e.getMessage());
+            return;
+        }
+        SparseMatrix bowMatrix = builder.build();
+        List<String> terms = hasher != null ? hasher.bucketNames() : vocabulary.terms();
+        if (hasher == null) {
+            PipelineMetrics.set("vocabulary_size", vocabulary.size());
         }
+        stage.stop(labels.size());
+        PipelineMetrics.recordMatrix(bowMatrix);
+        System.out.printf("BoW matrix: %d documents x %d terms, %d non-zeros (density %.5f%%)%n",
+                bowMatrix.numRows(), bowMatrix.numColumns(), bowMatrix.nonZeros(), bowMatrix.density() * 100);
 
-        // Step 4: Save the BoW matrix with vocabulary as headers in a CSV file, including the label column
-        saveMatrixWithVocabularyToCSV(bowMatrix, vocabulary, records, "BagOfWords_Feature_Matrix_with_Labels1.csv");
+        // Step 3: Save the BoW matrix with vocabulary and labels in the binary feature matrix format
+        try {
+            FeatureMatrixFile.write(Paths.get("BagOfWords_Feature_Matrix.bowm"), bowMatrix, terms, labels);
+        } catch (IOException e) {
+            System.err.println("Error saving the binary feature matrix: " + e.getMessage());
+        }
+        if (writeArff) {
+            saveMatrixAsSparseArff(bowMatrix, terms, labels, "BagOfWords_Feature_Matrix_with_Labels.arff");
+        }
+        if (writeDenseCsv) {
+            saveMatrixWithVocabularyToCSV(bowMatrix, terms, labels, "BagOfWords_Feature_Matrix_with_Labels1.csv");
+        }
 
-        // Step 5: Save the vocabulary to a separate CSV file
-        saveVocabularyToCSV(vocabulary, "Vocabulary.csv");
+        // Step 4: Save the vocabulary (or bucket names) to a separate CSV file
+        saveVocabularyToCSV(terms, "Vocabulary.csv");
 
         System.out.println("Bag-of-Words feature matrix with labels and vocabulary file saved successfully.");
     }
 
+    /**
+     * Builds the feature matrix of the records' title and text hashed into the hasher's buckets.
+     *
+     * @param records The preprocessed records.
+     * @param hasher  The feature hasher.
+     * @return The matrix with one row per record and one column per bucket.
+     */
+    public static SparseMatrix hashRecords(List<String[]> records, FeatureHasher hasher) {
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(hasher.numBuckets());
+        for (String[] record : records) {
+            FeatureHasher.Row row = hasher.hashRecord(record);
+            builder.addRow(row.columns(), row.values(), row.length());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Tokenizes the title and text of a record and maps every token to its vocabulary id,
+     * adding tokens the vocabulary has not seen yet.
+     *
+     * @param record     The preprocessed record (title in column 0, text in column 1).
+     * @param vocabulary The vocabulary to look up and extend.
+     * @return The term ids of the document's tokens, in token order.
+     */
+    public static int[] toTermIds(String[] record, Vocabulary vocabulary) {
+        return toTermIds(record[0], record[1], vocabulary);
+    }
+
+    /**
+     * Tokenizes a title and text on whitespace, as {@code split("\\s+")} does, and maps every
+     * lowercased token to its vocabulary id, adding tokens the vocabulary has not seen yet. Only the
+     * tokens are copied out of the character sequences, which may be {@link MappedCsvReader} slices.
+     *
+     * @param title      The preprocessed title.
+     * @param text       The preprocessed text.
+     * @param vocabulary The vocabulary to look up and extend.
+     * @return The term ids of the title's and then the text's tokens, in token order.
+     */
+    public static int[] toTermIds(CharSequence title, CharSequence text, Vocabulary vocabulary) {
+        // A token takes at least one character and one separator
+        int[] termIds = new int[(title.length() + 1) / 2 + (text.length() + 1) / 2];
+        int count = addTermIds(title, vocabulary, termIds, 0);
+        count = addTermIds(text, vocabulary, termIds, count);
+        return count == termIds.length ? termIds : Arrays.copyOf(termIds, count);
+    }
+
+    private static int addTermIds(CharSequence content, Vocabulary vocabulary, int[] termIds, int count) {
+        int length = content.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && isWhitespace(content.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < length && !isWhitespace(content.charAt(end))) {
+                end++;
+            }
+            if (end > start) {
+                // Convert to lowercase for uniformity
+                termIds[count++] = vocabulary.add(content.subSequence(start, end).toString().toLowerCase());
+            }
+            start = end;
+        }
+        return count;
+    }
+
+    /**
+     * @return Whether the character matches the regex {@code \s}.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Reads the preprocessed CSV file with a {@link MappedCsvReader}, so quoted fields containing
+     * commas, quotes or line breaks are read as single fields.
+     *
+     * @param filePath The path to the CSV file.
+     * @return List of records read from the CSV file.
+     */
     public static List<String[]> readCSV(String filePath) {
         List<String[]> records = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                records.add(line.split(",", -1)); // Split by comma for each row, including empty fields
-            }
+        try {
+            records = MappedCsvReader.readAll(filePath);
         } catch (IOException e) {
             System.err.println("Error reading the CSV file: " + e.getMessage());
         }
         return records;
     }
 
-    public static void saveMatrixWithVocabularyToCSV(int[][] matrix, List<String> vocabulary, List<String[]> records, String filePath) {
-        try (FileWriter writer = new FileWriter(filePath)) {
+    /**
+     * Saves the matrix in Weka's sparse ARFF format. Attribute 0 is the nominal label, followed by one
+     * numeric attribute per vocabulary term; each data row lists only its label and non-zero counts.
+     *
+     * @param matrix     The BoW count matrix.
+     * @param vocabulary Terms in column order.
+     * @param labels     Label of every row.
+     * @param filePath   The path where the ARFF file should be saved.
+     */
+    public static void saveMatrixAsSparseArff(SparseMatrix matrix, List<String> vocabulary, List<String> labels, String filePath) {
+        List<String> classValues = new ArrayList<>(new LinkedHashSet<>(labels));
+        try (Writer writer = new BufferedWriter(new FileWriter(filePath), 1 << 16)) {
+            writer.write("@relation BagOfWords\n\n");
+            writer.write("@attribute Label {");
+            for (int i = 0; i < classValues.size(); i++) {
+                writer.write((i > 0 ? "," : "") + Utils.quote(classValues.get(i)));
+            }
+            writer.write("}\n");
+            for (String word : vocabulary) {
+                writer.write("@attribute " + Utils.quote(word) + " numeric\n");
+            }
+            writer.write("\n@data\n");
+
+            StringBuilder rowBuilder = new StringBuilder();
+            for (int row = 0; row < matrix.numRows(); row++) {
+                rowBuilder.setLength(0);
+                rowBuilder.append("{0 ").append(Utils.quote(labels.get(row)));
+                for (int k = matrix.rowStart(row); k < matrix.rowEnd(row); k++) {
+                    rowBuilder.append(',').append(matrix.column(k) + 1).append(' ').append(matrix.value(k));
+                }
+                writer.write(rowBuilder.append("}\n").toString());
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving the matrix as sparse ARFF: " + e.getMessage());
+        }
+    }
+
+    public static void saveMatrixWithVocabularyToCSV(SparseMatrix matrix, List<String> vocabulary, List<String> labels, String filePath) {
+        try (Writer writer = new BufferedWriter(new FileWriter(filePath), 1 << 16)) {
             // Write the vocabulary as the header row
             writer.write("DocumentID,Label,");
             for (String word : vocabulary) {
@@ -73,15 +233,22 @@ public class d_boWords {
             }
             writer.write("\n");
 
-            // Write the BoW matrix with DocumentID and label as the first two columns
-            for (int i = 0; i < matrix.length; i++) {
-                writer.write("Doc" + (i + 1) + ","); // Add DocumentID for each row
-                writer.write(records.get(i)[records.get(i).length - 2] + ","); // Add classification label (last column)
-                StringBuilder rowBuilder = new StringBuilder();
-                for (int value : matrix[i]) {
-                    rowBuilder.append(value).append(",");
+            // Write the BoW matrix with DocumentID and label as the first two columns, expanding zeros row by row
+            StringBuilder rowBuilder = new StringBuilder();
+            for (int i = 0; i < matrix.numRows(); i++) {
+                rowBuilder.setLength(0);
+                rowBuilder.append("Doc").append(i + 1).append(','); // Add DocumentID for each row
+                rowBuilder.append(labels.get(i)).append(','); // Add classification label
+                int k = matrix.rowStart(i);
+                for (int column = 0; column < matrix.numColumns(); column++) {
+                    if (k < matrix.rowEnd(i) && matrix.column(k) == column) {
+                        rowBuilder.append(matrix.value(k++));
+                    } else {
+                        rowBuilder.append('0');
+                    }
+                    rowBuilder.append(',');
                 }
-                writer.write(rowBuilder.deleteCharAt(rowBuilder.length() - 1).toString() + "\n"); // Remove trailing comma
+                writer.write(rowBuilder.deleteCharAt(rowBuilder.length() - 1).append('\n').toString()); // Remove trailing comma
             }
         } catch (IOException e) {
             System.err.println("Error saving the matrix with vocabulary to CSV: " + e.getMessage());
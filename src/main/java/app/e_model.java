@@ -1,107 +1,292 @@
 package app;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
 import weka.classifiers.bayes.NaiveBayes;
-import weka.classifiers.Evaluation;
-import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.converters.ArffLoader;
 import weka.core.converters.CSVLoader;
 import weka.filters.Filter;
-import weka.core.Attribute;
-import weka.core.DenseInstance;
 
 public class e_model {
 
+    /**
+     * Trains and evaluates the classifier, or classifies text with a saved model.
+     * <p>
+     * Commands:
+     * <ul>
+     *   <li>{@code train [dataset] [--model=path] [--classifier=naivebayes|multinomial|flat]} cross-validates,
+     *   trains on the full dataset and saves the model artifact. The multinomial and flat models learn a
+     *   {@code .bowm} dataset straight from its memory mapping; Weka's NaiveBayes needs the whole dataset
+     *   as {@link Instances} on the heap.</li>
+     *   <li>{@code classify [--model=path] [--vocabulary=path] [--verdict-cache=path] [--text=article]} loads
+     *   the model artifact, rejecting it if it was not built with the given vocabulary file, and classifies
+     *   text read from standard input, or only the given text, after which it reports the time from JVM
+     *   start to the prediction; near-duplicates of articles in the verdict cache ({@code <model>.lsh} if
+     *   it exists) take the known label.</li>
+     *   <li>{@code update [preprocessed.csv] [--model=path] [--output=path]} folds new preprocessed records
+     *   into a multinomial model, growing its vocabulary, and saves a new artifact.</li>
+     * </ul>
+     * Without a command the dataset is trained on, saved, and then classified interactively.
+     *
+     * @param args Optional command, dataset path and options.
+     */
     public static void main(String[] args) throws Exception {
-        // Load the dataset
-        CSVLoader loader = new CSVLoader();
-        loader.setSource(new File("BagOfWords_Feature_Matrix_with_Labels.csv"));
-        Instances data = loader.getDataSet();
-
-        // Remove the Document column (first column)
-        data.deleteAttributeAt(0);
+        List<String> commands = Arrays.asList("train", "classify", "update");
+        String command = args.length > 0 && commands.contains(args[0]) ? args[0] : "";
+        String datasetPath = null;
+        String modelPath = "NaiveBayes.model";
+        String outputPath = null;
+        String vocabularyPath = null;
+        String verdictCachePath = null;
+        String text = null;
+        String classifierName = "naivebayes";
+        for (int i = command.isEmpty() ? 0 : 1; i < args.length; i++) {
+            if (args[i].startsWith("--model=")) {
+                modelPath = args[i].substring("--model=".length());
+            } else if (args[i].startsWith("--output=")) {
+                outputPath = args[i].substring("--output=".length());
+            } else if (args[i].startsWith("--vocabulary=")) {
+                vocabularyPath = args[i].substring("--vocabulary=".length());
+            } else if (args[i].startsWith("--verdict-cache=")) {
+                verdictCachePath = args[i].substring("--verdict-cache=".length());
+            } else if (args[i].startsWith("--text=")) {
+                text = args[i].substring("--text=".length());
+            } else if (args[i].startsWith("--classifier=")) {
+                classifierName = args[i].substring("--classifier=".length());
+            } else {
+                datasetPath = args[i];
+            }
+        }
 
-        // Set the Label column as the class attribute (now the first column after removing Document)
-        data.setClassIndex(0);
+        if (command.equals("update")) {
+            updateModel(datasetPath != null ? datasetPath : "PreprocessedNews.csv", modelPath,
+                    outputPath != null ? outputPath : modelPath);
+            return;
+        }
 
-        // Perform stratified 10-fold cross-validation
-        NaiveBayes model = new NaiveBayes();
-        Evaluation evaluation = new Evaluation(data);
+        if (command.equals("classify")) {
+            long start = System.nanoTime();
+            List<String> expectedVocabulary = vocabularyPath == null ? null : Files.readAllLines(Paths.get(vocabularyPath));
+            ModelArtifact artifact = ModelArtifact.load(Paths.get(modelPath), expectedVocabulary);
+            System.out.printf("Model loaded in %d ms (%d terms)%n", (System.nanoTime() - start) / 1_000_000,
+                    artifact.vocabulary().size());
+            NewsClassifier classifier = new NewsClassifier(artifact, MinHashIndex.loadVerdictCache(verdictCachePath, modelPath));
+            if (text == null) {
+                runQueryLoop(classifier);
+                return;
+            }
+            printPrediction(classifier.classify(text));
+            // Startup time of short-lived invocations, as measured by StartupBenchmark
+            System.out.printf("First prediction %d ms after JVM start%n", ManagementFactory.getRuntimeMXBean().getUptime());
+            return;
+        }
 
-        int numFolds = 10;
-        double totalAccuracy = 0;
-        int[][] cumulativeConfusionMatrix = new int[data.numClasses()][data.numClasses()];
+        String dataPath = datasetPath != null ? datasetPath : "BagOfWords_Feature_Matrix.bowm";
+        Classifier model;
+        Instances data;
+        if (dataPath.endsWith(".bowm") && !classifierName.equalsIgnoreCase("naivebayes")) {
+            // Count models learn the rows straight from the mapping; no Instances copy is built
+            try (FeatureMatrixFile matrix = FeatureMatrixFile.open(Paths.get(dataPath))) {
+                crossValidate(matrix);
+                model = trainCountModel(matrix, classifierName);
+                data = matrix.header();
+            }
+        } else {
+            // Load the dataset
+            data = loadDataset(dataPath);
+            Classifier template = newClassifier(classifierName);
+            crossValidate(data, template);
 
-        for (int fold = 0; fold < numFolds; fold++) {
-            // Split data into training and testing for this fold
-            Instances train = data.trainCV(numFolds, fold);
-            Instances test = data.testCV(numFolds, fold);
+            // Train final model on entire dataset
+            PipelineMetrics.Stage train = PipelineMetrics.startStage("train");
+            model = AbstractClassifier.makeCopy(template);
+            model.buildClassifier(data);
+            train.stop(data.numInstances());
+        }
+        new ModelArtifact(model, data).save(Paths.get(modelPath));
+        System.out.println("Model saved to " + modelPath);
 
-            // Build classifier and evaluate on test set
-            model.buildClassifier(train);
-            evaluation.evaluateModel(model, test);
+        if (command.isEmpty()) {
+            runQueryLoop(model, data);
+        }
+    }
 
-            // Display accuracy for this fold
-            double accuracy = (1 - evaluation.errorRate()) * 100;
-            System.out.println("=== Confusion Matrix for Fold " + (fold + 1) + " ===");
-            System.out.println(evaluation.toMatrixString());
-            System.out.printf("Accuracy for Fold %d: %.2f%%\n\n", (fold + 1), accuracy);
+    /**
+     * Creates an untrained classifier by name.
+     *
+     * @param name "naivebayes" for Weka's NaiveBayes, "multinomial" for {@link MultinomialNaiveBayes} or
+     *             "flat" for {@link FlatMultinomialNaiveBayes}.
+     * @return The classifier.
+     */
+    public static Classifier newClassifier(String name) {
+        switch (name.toLowerCase()) {
+            case "naivebayes":
+                return new NaiveBayes();
+            case "multinomial":
+                return new MultinomialNaiveBayes();
+            case "flat":
+                return new FlatMultinomialNaiveBayes();
+            default:
+                throw new IllegalArgumentException("Unknown classifier: " + name);
+        }
+    }
 
-            totalAccuracy += accuracy;
+    /**
+     * Trains a count-based model on every row of a feature matrix, reading the counts from the mapping.
+     *
+     * @param matrix         The labeled feature matrix.
+     * @param classifierName "multinomial" or "flat".
+     * @return The trained model, laid out like {@link FeatureMatrixFile#header()}.
+     */
+    public static Classifier trainCountModel(FeatureMatrixFile matrix, String classifierName) {
+        PipelineMetrics.Stage train = PipelineMetrics.startStage("train");
+        MultinomialNaiveBayes model = new MultinomialNaiveBayes(matrix.classValues(), matrix.vocabulary());
+        for (int row = 0; row < matrix.numRows(); row++) {
+            model.learn(matrix, row);
+        }
+        train.stop(matrix.numRows());
+        switch (classifierName.toLowerCase()) {
+            case "multinomial":
+                return model;
+            case "flat":
+                return model.compile();
+            default:
+                throw new IllegalArgumentException("Not a count-based classifier: " + classifierName);
+        }
+    }
 
-            // Update cumulative confusion matrix
-            double[][] foldMatrix = evaluation.confusionMatrix();
-            for (int i = 0; i < foldMatrix.length; i++) {
-                for (int j = 0; j < foldMatrix[i].length; j++) {
-                    cumulativeConfusionMatrix[i][j] += (int) foldMatrix[i][j];
-                }
+    /**
+     * Learns new preprocessed records into an existing multinomial model and saves a new snapshot.
+     * Only the new records are read; the vocabulary grows in place. If the model file does not exist
+     * yet, a new model is started.
+     *
+     * @param recordsPath Preprocessed CSV with the new records (label in the second-to-last column).
+     * @param modelPath   The current model artifact.
+     * @param outputPath  Where the updated artifact is written.
+     */
+    public static void updateModel(String recordsPath, String modelPath, String outputPath) throws Exception {
+        MultinomialNaiveBayes model;
+        if (Files.exists(Paths.get(modelPath))) {
+            Classifier classifier = ModelArtifact.load(Paths.get(modelPath)).classifier();
+            if (!(classifier instanceof MultinomialNaiveBayes)) {
+                throw new IllegalArgumentException("Incremental updates need a model trained with --classifier=multinomial");
             }
+            model = (MultinomialNaiveBayes) classifier;
+        } else {
+            model = new MultinomialNaiveBayes();
         }
 
-        // Display final cumulative confusion matrix
-        System.out.println("=== Final Cumulative Confusion Matrix ===");
-        for (int i = 0; i < cumulativeConfusionMatrix.length; i++) {
-            for (int j = 0; j < cumulativeConfusionMatrix[i].length; j++) {
-                System.out.print(cumulativeConfusionMatrix[i][j] + "\t");
+        int vocabularyBefore = model.vocabulary().size();
+        List<String[]> records = c_preprocessing1.readCSV(recordsPath);
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("update");
+        FeatureHasher hasher = FeatureHasher.fromVocabulary(model.vocabulary().terms());
+        for (String[] record : records) {
+            if (hasher != null) {
+                // Hashed models keep their fixed buckets instead of growing a vocabulary
+                FeatureHasher.Row row = hasher.hashRecord(record);
+                model.learn(record[record.length - 2], row.columns(), row.values(), row.length());
+            } else {
+                model.learn(record[record.length - 2], d_boWords.toTermIds(record, model.vocabulary()));
             }
-            System.out.println();
         }
 
-        // Calculate final metrics
-        int totalInstances = 0;
-        int truePositive = 0;
-        int trueNegative = 0;
-        int falsePositive = 0;
-        int falseNegative = 0;
-
-        for (int i = 0; i < cumulativeConfusionMatrix.length; i++) {
-            for (int j = 0; j < cumulativeConfusionMatrix[i].length; j++) {
-                totalInstances += cumulativeConfusionMatrix[i][j];
-                if (i == j) {
-                    if (i == 0) truePositive += cumulativeConfusionMatrix[i][j];
-                    else trueNegative += cumulativeConfusionMatrix[i][j];
-                } else {
-                    if (i == 0 && j == 1) falseNegative += cumulativeConfusionMatrix[i][j];
-                    if (i == 1 && j == 0) falsePositive += cumulativeConfusionMatrix[i][j];
-                }
-            }
+        stage.stop(records.size());
+        PipelineMetrics.set("vocabulary_size", model.vocabulary().size());
+
+        new ModelArtifact(model, model.header()).save(Paths.get(outputPath));
+        System.out.printf("Learned %d records, vocabulary %d -> %d terms. Model saved to %s%n",
+                records.size(), vocabularyBefore, model.vocabulary().size(), outputPath);
+    }
+
+    /**
+     * Runs stratified 10-fold cross-validation with the folds trained in parallel, and prints the
+     * confusion matrix, accuracy, precision, recall and F1 of every fold and of all folds combined.
+     *
+     * @param data     The labeled dataset.
+     * @param template The untrained classifier to evaluate.
+     */
+    public static void crossValidate(Instances data, Classifier template) throws Exception {
+        // Perform stratified 10-fold cross-validation, one worker per fold up to the processor count
+        int numFolds = 10;
+        long start = System.nanoTime();
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("cross-validate");
+        CrossValidator.Result result = new CrossValidator(numFolds, Runtime.getRuntime().availableProcessors(), 1)
+                .run(data, template);
+        stage.stop(data.numInstances());
+        printCrossValidation(data, result, start);
+    }
+
+    /**
+     * Runs stratified 10-fold cross-validation of a multinomial Naive Bayes on the rows of a feature
+     * matrix, reading them from the mapping, and prints the same metrics as
+     * {@link #crossValidate(Instances, Classifier)}.
+     *
+     * @param matrix The labeled feature matrix.
+     */
+    public static void crossValidate(FeatureMatrixFile matrix) throws Exception {
+        int numFolds = 10;
+        long start = System.nanoTime();
+        PipelineMetrics.Stage stage = PipelineMetrics.startStage("cross-validate");
+        CrossValidator.Result result = new CrossValidator(numFolds, Runtime.getRuntime().availableProcessors(), 1)
+                .run(matrix);
+        stage.stop(matrix.numRows());
+        printCrossValidation(matrix.header(), result, start);
+    }
+
+    private static void printCrossValidation(Instances data, CrossValidator.Result result, long start) {
+        for (int fold = 0; fold < result.numFolds(); fold++) {
+            System.out.println("=== Confusion Matrix for Fold " + (fold + 1) + " ===");
+            printMetrics(data, result.foldMatrix(fold));
+            System.out.println();
         }
 
-        double finalAccuracy = (truePositive + trueNegative) / (double) totalInstances * 100;
-        double precision = truePositive / (double) (truePositive + falsePositive);
-        double recall = truePositive / (double) (truePositive + falseNegative);
-        double f1Score = 2 * (precision * recall) / (precision + recall);
+        // Display final metrics over the summed fold confusion matrices
+        System.out.println("=== Final Cumulative Confusion Matrix ===");
+        printMetrics(data, result.aggregateMatrix());
+        System.out.printf("Cross-validation took %.1f s%n", (System.nanoTime() - start) / 1e9);
+    }
 
-        System.out.println("\n=== Final Metrics ===");
-        System.out.printf("Final Accuracy: %.2f%%\n", finalAccuracy);
-        System.out.printf("Precision: %.2f\n", precision);
-        System.out.printf("Recall: %.2f\n", recall);
-        System.out.printf("F1-Score: %.2f\n", f1Score);
+    /**
+     * Prints a confusion matrix with its accuracy and per-class precision, recall and F1.
+     */
+    private static void printMetrics(Instances data, double[][] matrix) {
+        for (double[] row : matrix) {
+            for (double count : row) {
+                System.out.print((int) count + "\t");
+            }
+            System.out.println();
+        }
+        System.out.printf("Accuracy: %.2f%%\n", CrossValidator.Result.accuracy(matrix) * 100);
+        for (int c = 0; c < matrix.length; c++) {
+            System.out.printf("%s: Precision %.2f, Recall %.2f, F1-Score %.2f\n", data.classAttribute().value(c),
+                    CrossValidator.Result.precision(matrix, c), CrossValidator.Result.recall(matrix, c),
+                    CrossValidator.Result.f1(matrix, c));
+        }
+    }
 
-        // Train final model on entire dataset
-        model.buildClassifier(data);
+    /**
+     * Reads text from standard input and prints the predicted class of each line until "exit".
+     *
+     * @param model The trained classifier.
+     * @param data  The training data or its header.
+     */
+    public static void runQueryLoop(Classifier model, Instances data) throws Exception {
+        // Build the inference header and term dictionary once for all queries
+        runQueryLoop(new NewsClassifier(model, data));
+    }
 
+    /**
+     * Reads text from standard input and prints the predicted class of each line until "exit".
+     *
+     * @param classifier The classifier, possibly with a verdict cache.
+     */
+    public static void runQueryLoop(NewsClassifier classifier) throws Exception {
         // User input loop for classification
         Scanner scanner = new Scanner(System.in);
         while (true) {
@@ -112,52 +297,54 @@ public class e_model {
                 break;
             }
 
-            // Preprocess user input (same as training data)
-            String[] userTokens = userInput.split("\\s+");
-            Map<String, Integer> wordCounts = new HashMap<>();
-            for (String token : userTokens) {
-                token = token.toLowerCase(); // Convert to lowercase for uniformity
-                if (!token.isEmpty()) {
-                    wordCounts.put(token, wordCounts.getOrDefault(token, 0) + 1);
-                }
-            }
-
-            // Create a new instance for the user input with the same attributes as the training data
-            ArrayList<Attribute> attributes = new ArrayList<>();
-
-            // Add vocabulary attributes to the list (same as training data)
-            for (int i = 0; i < data.numAttributes() - 1; i++) {
-                attributes.add(new Attribute(data.attribute(i).name()));
-            }
+            // Classify the user input and print the predicted class label
+            printPrediction(classifier.classify(userInput));
+        }
 
-            // Add the class attribute (same as training data)
-            ArrayList<String> classValues = new ArrayList<>();
-            for (int i = 0; i < data.numClasses(); i++) {
-                classValues.add(data.classAttribute().value(i));
-            }
-            attributes.add(new Attribute("class", classValues));
+        scanner.close();
+    }
 
-            // Create a new instance (feature vector) for user input
-            Instance instance = new DenseInstance(attributes.size());
-            instance.setDataset(data);
+    private static void printPrediction(NewsClassifier.Prediction prediction) {
+        if (prediction.cached()) {
+            System.out.printf("Predicted class: %s (near-duplicate of a known article, similarity %.2f)%n",
+                    prediction.label(), prediction.similarity());
+        } else {
+            System.out.println("Predicted class: " + prediction.label());
+        }
+    }
 
-            // Populate the feature vector (BoW)
-            for (int i = 0; i < attributes.size() - 1; i++) {
-                String word = attributes.get(i).name();
-                instance.setValue(i, wordCounts.getOrDefault(word, 0));
+    /**
+     * Loads the BoW feature matrix with the Label column as the class attribute at index 0.
+     * <p>
+     * Binary {@code .bowm} files and sparse ARFF files written by {@code d_boWords} load as
+     * {@code SparseInstance}s. Dense CSV files are still accepted; their leading DocumentID column is dropped.
+     * Every row is copied onto the heap; count-based models should read a {@code .bowm} through
+     * {@link FeatureMatrixFile} instead.
+     *
+     * @param filePath Path to a {@code .bowm}, {@code .arff} or {@code .csv} feature matrix.
+     * @return The dataset with its class index set.
+     */
+    public static Instances loadDataset(String filePath) throws IOException {
+        Instances data;
+        if (filePath.endsWith(".bowm")) {
+            try (FeatureMatrixFile matrix = FeatureMatrixFile.open(new File(filePath).toPath())) {
+                data = matrix.toInstances();
             }
+        } else if (filePath.endsWith(".arff")) {
+            ArffLoader loader = new ArffLoader();
+            loader.setSource(new File(filePath));
+            data = loader.getDataSet();
+        } else {
+            CSVLoader loader = new CSVLoader();
+            loader.setSource(new File(filePath));
+            data = loader.getDataSet();
 
-            // Set the class value to an unknown initially
-            instance.setClassMissing();
-
-            // Classify the user input
-            double predictedClass = model.classifyInstance(instance);
-            String predictedLabel = data.classAttribute().value((int) predictedClass);
-
-            // Print the predicted class label
-            System.out.println("Predicted class: " + predictedLabel);
+            // Remove the Document column (first column)
+            data.deleteAttributeAt(0);
         }
 
-        scanner.close();
+        // Set the Label column as the class attribute (the first column)
+        data.setClassIndex(0);
+        return data;
     }
 }
\ No newline at end of file
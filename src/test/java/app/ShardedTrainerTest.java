@@ -0,0 +1,61 @@
+package app;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Trains {@code sharded/preprocessed.csv} in map worker JVMs and checks the reduced model against
+ * training in this process: the statistics must be byte for byte identical and every record must get
+ * the same prediction.
+ */
+class ShardedTrainerTest {
+
+    private static String input;
+    private static long records;
+
+    @BeforeAll
+    static void locateFixture() throws Exception {
+        input = Paths.get(ShardedTrainerTest.class.getResource("/sharded/preprocessed.csv").toURI()).toString();
+        records = MappedCsvReader.readAll(input).size();
+    }
+
+    @Test
+    void workersMatchSingleProcessTraining() throws Exception {
+        MultinomialNaiveBayes merged = ShardedTrainer.trainInWorkers(input, 3, null, false);
+        MultinomialNaiveBayes single = ShardedTrainer.train(input, 0, Long.MAX_VALUE, null);
+        assertArrayEquals(ShardedTrainer.statistics(single), ShardedTrainer.statistics(merged));
+        assertTrue(ShardedTrainer.verifyEqual(merged, single, input));
+    }
+
+    @Test
+    void hashedWorkersMatchSingleProcessTraining() throws Exception {
+        FeatureHasher hasher = new FeatureHasher(64, false);
+        MultinomialNaiveBayes merged = ShardedTrainer.trainInWorkers(input, 2, hasher, false);
+        MultinomialNaiveBayes single = ShardedTrainer.train(input, 0, Long.MAX_VALUE, hasher);
+        assertArrayEquals(ShardedTrainer.statistics(single), ShardedTrainer.statistics(merged));
+        assertTrue(ShardedTrainer.verifyEqual(merged, single, input));
+    }
+
+    @Test
+    void rangesCoverTheFileAndSeekToTheirFirstRecord() throws Exception {
+        long[][] boundaries = ShardedTrainer.splitRecords(input, 3);
+        assertEquals(0, boundaries[0][0]);
+        assertEquals(records, boundaries[0][3]);
+        assertEquals(Files.size(Paths.get(input)), boundaries[1][3]);
+        for (int shard = 0; shard < 3; shard++) {
+            long from = boundaries[0][shard];
+            long to = boundaries[0][shard + 1];
+            assertTrue(from < to, "Shard " + shard + " is empty");
+            assertArrayEquals(ShardedTrainer.statistics(ShardedTrainer.train(input, from, to, null)),
+                    ShardedTrainer.statistics(ShardedTrainer.train(input, from, to, boundaries[1][shard], null)),
+                    "Shard " + shard);
+        }
+    }
+}
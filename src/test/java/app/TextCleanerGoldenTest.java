@@ -0,0 +1,69 @@
+package app;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Golden-file test of {@link TextCleaner}: the title and text of every record of
+ * {@code cleaner/input.csv} must clean to the matching line of {@code cleaner/expected.txt}, which was
+ * produced by the original regex-based chain of {@link c_preprocessing1}.
+ */
+class TextCleanerGoldenTest {
+
+    private static Set<String> stopWords;
+    private static List<String> inputs;
+    private static List<String> expected;
+
+    @BeforeAll
+    static void loadFixtures() throws Exception {
+        stopWords = new HashSet<>(Files.readAllLines(resource("stopwords.txt"), StandardCharsets.UTF_8));
+        List<String[]> records = MappedCsvReader.readAll(resource("input.csv").toString());
+        inputs = new ArrayList<>();
+        for (String[] record : records.subList(1, records.size())) { // Skip the header
+            inputs.add(record[0]);
+            inputs.add(record[1]);
+        }
+        expected = Files.readAllLines(resource("expected.txt"), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void cleanerMatchesGoldenFile() {
+        TextCleaner cleaner = new TextCleaner(stopWords);
+        assertEquals(expected.size(), inputs.size(), "expected.txt has one line per title and text");
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(expected.get(i), cleaner.clean(inputs.get(i)), "Input: " + inputs.get(i));
+        }
+    }
+
+    @Test
+    void cleanerAppendsWithSingleSeparator() {
+        TextCleaner cleaner = new TextCleaner(stopWords);
+        StringBuilder out = new StringBuilder("prefix");
+        cleaner.clean(inputs.get(0), out);
+        assertEquals("prefix " + expected.get(0), out.toString());
+    }
+
+    @Test
+    void referenceChainStillMatchesGoldenFile() throws Exception {
+        c_preprocessing1.loadStopWordsFromFile(resource("stopwords.txt").toString());
+        c_preprocessing1 reference = new c_preprocessing1();
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(expected.get(i), reference.referenceClean(inputs.get(i)), "Input: " + inputs.get(i));
+        }
+    }
+
+    private static Path resource(String name) throws Exception {
+        return Paths.get(TextCleanerGoldenTest.class.getResource("/cleaner/" + name).toURI());
+    }
+}